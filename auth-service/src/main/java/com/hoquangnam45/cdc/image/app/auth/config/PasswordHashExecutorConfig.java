@@ -0,0 +1,38 @@
+package com.hoquangnam45.cdc.image.app.auth.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class PasswordHashExecutorConfig {
+    // BCrypt is CPU bound, so the pool is sized to the available cores by default. The queue is bounded and a full queue
+    // rejects the task (surfaced as 429) instead of letting a login storm pile up work and starve everything else.
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService passwordHashExecutor(MeterRegistry meterRegistry, @Value("${app.password-hash.parallelism}") int parallelism, @Value("${app.password-hash.queue-capacity}") int queueCapacity) {
+        int poolSize = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("password-hash-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        Gauge.builder("auth.password.hash.queue.depth", executor, e -> e.getQueue().size())
+                .description("Password hash tasks waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("auth.password.hash.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Password hash tasks currently running")
+                .register(meterRegistry);
+        return executor;
+    }
+}
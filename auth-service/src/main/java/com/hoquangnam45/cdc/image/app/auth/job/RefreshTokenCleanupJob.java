@@ -1,28 +1,127 @@
 package com.hoquangnam45.cdc.image.app.auth.job;
 
 import com.hoquangnam45.cdc.image.app.auth.repository.AuthRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
 import java.time.Instant;
 
+// Only the db store needs it, the memory and redis stores expire tokens natively
 @Component
+@ConditionalOnProperty(name = "app.refresh-token.store", havingValue = "db", matchIfMissing = true)
 public class RefreshTokenCleanupJob {
 
     private static final Logger logger = LoggerFactory.getLogger(RefreshTokenCleanupJob.class);
 
     private final AuthRepository authRepository;
+    private final DataSource dataSource;
+    private final int batchSize;
+    private final Duration pause;
+    private final Duration timeBudget;
+    private final long lockKey;
+    private final Counter deletedCounter;
+    private final Counter batchCounter;
+    private final Counter skippedCounter;
+    private final Counter budgetExhaustedCounter;
+    private final Timer runTimer;
 
-    public RefreshTokenCleanupJob(AuthRepository authRepository) {
+    public RefreshTokenCleanupJob(
+            AuthRepository authRepository, DataSource dataSource, MeterRegistry meterRegistry,
+            @Value("${app.refresh-token.cleanup.batch-size}") int batchSize,
+            @Value("${app.refresh-token.cleanup.pause}") Duration pause,
+            @Value("${app.refresh-token.cleanup.time-budget}") Duration timeBudget,
+            @Value("${app.refresh-token.cleanup.lock-key}") long lockKey) {
         this.authRepository = authRepository;
+        this.dataSource = dataSource;
+        this.batchSize = batchSize;
+        this.pause = pause;
+        this.timeBudget = timeBudget;
+        this.lockKey = lockKey;
+        this.deletedCounter = meterRegistry.counter("auth.refresh_token.cleanup.deleted");
+        this.batchCounter = meterRegistry.counter("auth.refresh_token.cleanup.batches");
+        this.skippedCounter = meterRegistry.counter("auth.refresh_token.cleanup.skipped");
+        this.budgetExhaustedCounter = meterRegistry.counter("auth.refresh_token.cleanup.budget_exhausted");
+        this.runTimer = meterRegistry.timer("auth.refresh_token.cleanup.run");
     }
 
-    @Scheduled(cron = "0 */15 * * * ?")
+    // Deletes in small batches, each its own transaction, so no run holds row locks for long or leaves a huge amount of
+    // dead tuples behind at once. Whatever is left when the time budget runs out is picked up by the next run.
+    @Scheduled(cron = "${app.refresh-token.cleanup.cron}")
     public void cleanupStaleRefreshTokens() {
+        // A session level advisory lock held on its own connection for the whole run, so only one replica cleans at a
+        // time. The lock is released with the connection if the process dies.
+        try (Connection lockConnection = dataSource.getConnection()) {
+            if (!tryAdvisoryLock(lockConnection)) {
+                skippedCounter.increment();
+                logger.info("Skipped stale refresh token cleanup job, another instance is running it.");
+                return;
+            }
+            try {
+                runTimer.record(this::deleteInBatches);
+            } finally {
+                advisoryUnlock(lockConnection);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed stale refresh token cleanup job. Reason: {}", e.getMessage(), e);
+        }
+    }
+
+    private void deleteInBatches() {
         logger.info("Starting stale refresh token cleanup job.");
-        int deletedCount = authRepository.deleteExpiredRefreshTokens(Instant.now());
-        logger.info("Completed stale refresh token cleanup job. Deleted {} tokens.", deletedCount);
+        Instant now = Instant.now();
+        Instant deadline = now.plus(timeBudget);
+        int totalDeleted = 0;
+        int batches = 0;
+        while (true) {
+            int deletedCount = authRepository.deleteExpiredRefreshTokens(now, batchSize);
+            totalDeleted += deletedCount;
+            batches++;
+            deletedCounter.increment(deletedCount);
+            batchCounter.increment();
+            if (deletedCount < batchSize) {
+                break;
+            }
+            if (!Instant.now().plus(pause).isBefore(deadline)) {
+                budgetExhaustedCounter.increment();
+                logger.info("Stale refresh token cleanup job ran out of its time budget, continuing on the next run.");
+                break;
+            }
+            try {
+                Thread.sleep(pause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        logger.info("Completed stale refresh token cleanup job. Deleted {} tokens in {} batches.", totalDeleted, batches);
+    }
+
+    private boolean tryAdvisoryLock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+            statement.setLong(1, lockKey);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    private void advisoryUnlock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+            statement.setLong(1, lockKey);
+            statement.execute();
+        }
     }
-}
\ No newline at end of file
+}
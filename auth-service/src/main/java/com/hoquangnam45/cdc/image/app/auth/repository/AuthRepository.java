@@ -15,8 +15,8 @@ public interface AuthRepository {
     UserMdl findUser(@Param("username") String username, @Param("phoneNumber") String phoneNumber, @Param("email") String email);
     UserMdl getUser(@Param("id") UUID id);
     void saveUser(UserMdl userMdl);
+    void updateUserPasswordHash(@Param("id") UUID id, @Param("passwordHash") String passwordHash);
     void saveRefreshToken(RefreshTokenMdl refreshTokenMdl);
-    void deleteRefreshToken(@Param("hashedRefreshToken") String hashedRefreshToken);
-    RefreshTokenMdl findRefreshToken(@Param("hashedRefreshToken") String hashedRefreshToken);
-    int deleteExpiredRefreshTokens(@Param("now") Instant now);
+    RefreshTokenMdl consumeRefreshToken(@Param("hashedRefreshToken") String hashedRefreshToken);
+    int deleteExpiredRefreshTokens(@Param("now") Instant now, @Param("batchSize") int batchSize);
 }
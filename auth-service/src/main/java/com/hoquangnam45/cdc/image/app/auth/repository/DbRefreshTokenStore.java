@@ -0,0 +1,23 @@
+package com.hoquangnam45.cdc.image.app.auth.repository;
+
+import com.hoquangnam45.cdc.image.app.auth.model.RefreshTokenMdl;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.refresh-token.store", havingValue = "db", matchIfMissing = true)
+public class DbRefreshTokenStore implements RefreshTokenStore {
+    private final AuthRepository authRepository;
+
+    @Override
+    public void save(RefreshTokenMdl refreshTokenMdl) {
+        authRepository.saveRefreshToken(refreshTokenMdl);
+    }
+
+    @Override
+    public RefreshTokenMdl consume(String hashedRefreshToken) {
+        return authRepository.consumeRefreshToken(hashedRefreshToken);
+    }
+}
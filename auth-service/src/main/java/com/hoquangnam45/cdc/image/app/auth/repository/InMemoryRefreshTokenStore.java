@@ -0,0 +1,39 @@
+package com.hoquangnam45.cdc.image.app.auth.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.hoquangnam45.cdc.image.app.auth.model.RefreshTokenMdl;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+// Single instance only (tokens are lost on restart and not shared between replicas), meant for tests and local runs
+@Component
+@ConditionalOnProperty(name = "app.refresh-token.store", havingValue = "memory")
+public class InMemoryRefreshTokenStore implements RefreshTokenStore {
+    private final Cache<String, RefreshTokenMdl> cache;
+
+    public InMemoryRefreshTokenStore(@Value("${app.refresh-token.memory.maximum-size}") long maximumSize) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(Expiry.creating((String hashedRefreshToken, RefreshTokenMdl refreshTokenMdl) -> {
+                    Duration ttl = Duration.between(Instant.now(), refreshTokenMdl.getExpiredAt());
+                    return ttl.isNegative() ? Duration.ZERO : ttl;
+                }))
+                .build();
+    }
+
+    @Override
+    public void save(RefreshTokenMdl refreshTokenMdl) {
+        cache.put(refreshTokenMdl.getRefreshToken(), refreshTokenMdl);
+    }
+
+    @Override
+    public RefreshTokenMdl consume(String hashedRefreshToken) {
+        return cache.asMap().remove(hashedRefreshToken);
+    }
+}
@@ -0,0 +1,52 @@
+package com.hoquangnam45.cdc.image.app.auth.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hoquangnam45.cdc.image.app.auth.model.RefreshTokenMdl;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+// Tokens are stored with a TTL matching expired_at, so Redis expires them and no cleanup job is needed. consume is a
+// single GETDEL (Redis 6.2+).
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.refresh-token.store", havingValue = "redis")
+public class RedisRefreshTokenStore implements RefreshTokenStore {
+    private static final String KEY_PREFIX = "refresh_token:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public void save(RefreshTokenMdl refreshTokenMdl) {
+        Duration ttl = Duration.between(Instant.now(), refreshTokenMdl.getExpiredAt());
+        if (!ttl.isPositive()) {
+            return;
+        }
+        String value;
+        try {
+            value = objectMapper.writeValueAsString(refreshTokenMdl);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize refresh token", e);
+        }
+        redisTemplate.opsForValue().set(KEY_PREFIX + refreshTokenMdl.getRefreshToken(), value, ttl);
+    }
+
+    @Override
+    public RefreshTokenMdl consume(String hashedRefreshToken) {
+        String value = redisTemplate.opsForValue().getAndDelete(KEY_PREFIX + hashedRefreshToken);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(value, RefreshTokenMdl.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to deserialize refresh token", e);
+        }
+    }
+}
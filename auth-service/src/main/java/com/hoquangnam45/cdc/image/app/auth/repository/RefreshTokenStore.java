@@ -0,0 +1,13 @@
+package com.hoquangnam45.cdc.image.app.auth.repository;
+
+import com.hoquangnam45.cdc.image.app.auth.model.RefreshTokenMdl;
+
+// Storage of issued refresh tokens, keyed by the hashed refresh token. Selected by app.refresh-token.store (db, memory
+// or redis). Implementations drop tokens once expired_at passes, either natively (TTL) or through RefreshTokenCleanupJob.
+public interface RefreshTokenStore {
+    void save(RefreshTokenMdl refreshTokenMdl);
+
+    // Atomically removes the token and returns it, null when it does not exist. Only one of several concurrent callers
+    // with the same token gets it back, so a refresh token can never be rotated twice.
+    RefreshTokenMdl consume(String hashedRefreshToken);
+}
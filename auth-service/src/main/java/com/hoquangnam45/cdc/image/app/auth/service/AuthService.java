@@ -6,16 +6,18 @@ import com.hoquangnam45.cdc.image.app.auth.model.RefreshTokenMdl;
 import com.hoquangnam45.cdc.image.app.auth.model.RegisterRequest;
 import com.hoquangnam45.cdc.image.app.common.model.UserMdl;
 import com.hoquangnam45.cdc.image.app.auth.repository.AuthRepository;
+import com.hoquangnam45.cdc.image.app.auth.repository.RefreshTokenStore;
 import com.hoquangnam45.cdc.image.app.common.constant.CommonConstant;
 import com.hoquangnam45.cdc.image.app.common.constant.CommonResponseCode;
 import com.hoquangnam45.cdc.image.app.common.exception.ServiceException;
 import com.hoquangnam45.cdc.image.app.common.service.TokenService;
 import com.nimbusds.jose.JOSEException;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.crypto.bcrypt.BCrypt;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
@@ -24,21 +26,46 @@ import java.time.Instant;
 import java.util.Base64;
 import java.util.UUID;
 
+@Slf4j
 @Service
 public class AuthService {
     private final AuthRepository authRepository;
+    private final RefreshTokenStore refreshTokenStore;
     private final TokenService tokenService;
+    private final Scheduler blockingScheduler;
+    private final PasswordHasher passwordHasher;
     private final Duration accessTokenExpireDuration;
     private final Duration refreshTokenExpireDuration;
 
-    public AuthService(AuthRepository authRepository, TokenService tokenService, @Value("${jwt.access-token.expiration-min}") Integer accessTokenExpireDurationMin, @Value("${jwt.refresh-token.expiration-min}") Integer refreshTokenExpireDurationMin) {
+    public AuthService(AuthRepository authRepository, RefreshTokenStore refreshTokenStore, TokenService tokenService, Scheduler blockingScheduler, PasswordHasher passwordHasher, @Value("${jwt.access-token.expiration-min}") Integer accessTokenExpireDurationMin, @Value("${jwt.refresh-token.expiration-min}") Integer refreshTokenExpireDurationMin) {
         this.authRepository = authRepository;
+        this.refreshTokenStore = refreshTokenStore;
         this.tokenService = tokenService;
+        this.blockingScheduler = blockingScheduler;
+        this.passwordHasher = passwordHasher;
         this.accessTokenExpireDuration = Duration.ofMinutes(accessTokenExpireDurationMin);
         this.refreshTokenExpireDuration = Duration.ofMinutes(refreshTokenExpireDurationMin);
     }
 
+    // Every public call hits the database or KMS, so the work is subscribed on the blocking scheduler. BCrypt runs on the
+    // password hash pool instead, so a login spike is rejected there before it can take the threads refresh and logout need.
     public Mono<LoginResult> login(LoginRequest request) {
+        return Mono.defer(() -> doLogin(request)).subscribeOn(blockingScheduler);
+    }
+
+    public Mono<LoginResult> register(RegisterRequest request) {
+        return Mono.defer(() -> doRegister(request)).subscribeOn(blockingScheduler);
+    }
+
+    public Mono<LoginResult> refresh(String refreshToken) {
+        return Mono.defer(() -> doRefresh(refreshToken)).subscribeOn(blockingScheduler);
+    }
+
+    public Mono<Boolean> logout(String refreshToken) {
+        return Mono.defer(() -> doLogout(refreshToken)).subscribeOn(blockingScheduler);
+    }
+
+    private Mono<LoginResult> doLogin(LoginRequest request) {
         if (StringUtils.isAllBlank(request.username(), request.email(), request.phoneNumber())) {
             return Mono.error(new ServiceException(400, CommonResponseCode.REQUEST_VALIDATION_FAIL, "Username, email, or phone number is required."));
         }
@@ -51,66 +78,70 @@ public class AuthService {
         if (user == null) {
             return Mono.error(new ServiceException(404, CommonResponseCode.NOT_FOUND, "User not found"));
         }
-        boolean validPassword = validPassword(request.password(), user.getPasswordHash());
-        if (!validPassword) {
-            return Mono.error(new ServiceException(401, CommonResponseCode.UNAUTHENTICATED, "Invalid credentials."));
-        }
-        try {
-            return Mono.just(generateTokensAndSave(user));
-        } catch (Exception e) {
-            return Mono.error(new ServiceException(500, CommonResponseCode.INTERNAL_SERVER_ERROR, "Failed to issue jwt token. Reason: " + e.getMessage()));
+        return passwordHasher.verify(request.password(), user.getPasswordHash())
+                .publishOn(blockingScheduler)
+                .flatMap(validPassword -> {
+                    if (!validPassword) {
+                        return Mono.error(new ServiceException(401, CommonResponseCode.UNAUTHENTICATED, "Invalid credentials."));
+                    }
+                    return rehashPasswordIfNeeded(user, request.password())
+                            .then(Mono.defer(() -> issueTokens(user)));
+                });
+    }
+
+    // The plain password is only available on login, so that is where hashes created with an old cost get upgraded.
+    // A failed or rejected rehash does not fail the login, it is retried on the next one.
+    private Mono<Void> rehashPasswordIfNeeded(UserMdl user, String password) {
+        if (!passwordHasher.needsRehash(user.getPasswordHash())) {
+            return Mono.empty();
         }
+        return passwordHasher.hash(password)
+                .publishOn(blockingScheduler)
+                .doOnNext(newPasswordHash -> authRepository.updateUserPasswordHash(user.getId(), newPasswordHash))
+                .onErrorResume(e -> {
+                    log.warn("Failed to rehash password [userId = {}]. Reason: {}", user.getId(), e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
     }
 
-    public Mono<LoginResult> register(RegisterRequest request) {
+    private Mono<LoginResult> doRegister(RegisterRequest request) {
         Throwable err = validateRegisterRequest(request);
         if (err != null) {
             return Mono.error(err);
         }
-        String hashedPassword = BCrypt.hashpw(request.password(), BCrypt.gensalt());
-        UserMdl user = new UserMdl(
-                UUID.randomUUID(),
-                request.username(),
-                request.email(),
-                request.phoneNumber(),
-                hashedPassword,
-                false,
-                false,
-                Instant.now()
-        );
-        authRepository.saveUser(user);
-        try {
-            return Mono.just(generateTokensAndSave(user));
-        } catch (Exception e) {
-            return Mono.error(new ServiceException(500, CommonResponseCode.INTERNAL_SERVER_ERROR, "Failed to issue jwt token. Reason: " + e.getMessage()));
-        }
+        return passwordHasher.hash(request.password())
+                .publishOn(blockingScheduler)
+                .flatMap(hashedPassword -> {
+                    UserMdl user = new UserMdl(
+                            UUID.randomUUID(),
+                            request.username(),
+                            request.email(),
+                            request.phoneNumber(),
+                            hashedPassword,
+                            false,
+                            false,
+                            Instant.now()
+                    );
+                    authRepository.saveUser(user);
+                    return issueTokens(user);
+                });
     }
 
-    public Mono<LoginResult> refresh(String refreshToken) {
+    private Mono<LoginResult> doRefresh(String refreshToken) {
         RefreshTokenMdl refreshTokenMdl;
         try {
-            refreshTokenMdl = validateRefreshToken(refreshToken);
+            refreshTokenMdl = consumeRefreshToken(refreshToken);
         } catch (ServiceException e) {
             return Mono.error(e);
         }
-        authRepository.deleteRefreshToken(refreshTokenMdl.getRefreshToken());
         UserMdl userMdl = authRepository.getUser(refreshTokenMdl.getUserId());
-        try {
-            return Mono.just(generateTokensAndSave(userMdl));
-        } catch (Exception e) {
-            return Mono.error(new ServiceException(500, CommonResponseCode.INTERNAL_SERVER_ERROR, "Failed to issue jwt token. Reason: " + e.getMessage()));
-        }
+        return issueTokens(userMdl);
     }
 
-    public Mono<Boolean> logout(String refreshToken) {
-        RefreshTokenMdl refreshTokenMdl;
-        try {
-            refreshTokenMdl = validateRefreshToken(refreshToken);
-        } catch (ServiceException e) {
-            refreshTokenMdl = null;
-        }
-        if (refreshTokenMdl != null) {
-            authRepository.deleteRefreshToken(refreshTokenMdl.getRefreshToken());
+    private Mono<Boolean> doLogout(String refreshToken) {
+        if (StringUtils.isNotBlank(refreshToken)) {
+            refreshTokenStore.consume(tokenService.hashToken(CommonConstant.HASH_ALGORITHM, refreshToken));
         }
         return Mono.just(true);
     }
@@ -129,12 +160,13 @@ public class AuthService {
         return null;
     }
 
-    private RefreshTokenMdl validateRefreshToken(String refreshToken) throws ServiceException {
+    // Removes the token in the same step as reading it, an expired token is therefore also gone after this call
+    private RefreshTokenMdl consumeRefreshToken(String refreshToken) throws ServiceException {
         if (StringUtils.isBlank(refreshToken)) {
             throw new ServiceException(400, CommonResponseCode.REQUEST_VALIDATION_FAIL, "Refresh token is required");
         }
         String hashedRefreshToken = tokenService.hashToken(CommonConstant.HASH_ALGORITHM, refreshToken);
-        RefreshTokenMdl refreshTokenMdl = authRepository.findRefreshToken(hashedRefreshToken);
+        RefreshTokenMdl refreshTokenMdl = refreshTokenStore.consume(hashedRefreshToken);
         if (refreshTokenMdl == null) {
             throw new ServiceException(404, CommonResponseCode.NOT_FOUND, "Refresh token not found or may expired");
         }
@@ -145,8 +177,12 @@ public class AuthService {
         return refreshTokenMdl;
     }
 
-    private static boolean validPassword(String password, String hashedPassword) {
-        return BCrypt.checkpw(password, hashedPassword);
+    private Mono<LoginResult> issueTokens(UserMdl user) {
+        try {
+            return Mono.just(generateTokensAndSave(user));
+        } catch (Exception e) {
+            return Mono.error(new ServiceException(500, CommonResponseCode.INTERNAL_SERVER_ERROR, "Failed to issue jwt token. Reason: " + e.getMessage()));
+        }
     }
 
     private LoginResult generateTokensAndSave(UserMdl user) throws NoSuchAlgorithmException, JOSEException {
@@ -158,7 +194,7 @@ public class AuthService {
         String hashedRefreshToken = tokenService.hashToken(CommonConstant.HASH_ALGORITHM, refreshToken);
         String hashedAccessToken = tokenService.hashToken(CommonConstant.HASH_ALGORITHM, accessToken);
         RefreshTokenMdl refreshTokenMdl = new RefreshTokenMdl(UUID.randomUUID(), user.getId(), hashedRefreshToken, hashedAccessToken, (int) refreshTokenExpireDuration.toSeconds(), now, refreshTokenExpireAt);
-        authRepository.saveRefreshToken(refreshTokenMdl);
+        refreshTokenStore.save(refreshTokenMdl);
         return new LoginResult(accessToken, refreshToken, accessTokenExpireDuration, refreshTokenExpireDuration, accessTokenExpireAt, refreshTokenExpireAt);
     }
 }
@@ -0,0 +1,78 @@
+package com.hoquangnam45.cdc.image.app.auth.service;
+
+import com.hoquangnam45.cdc.image.app.common.constant.CommonResponseCode;
+import com.hoquangnam45.cdc.image.app.common.exception.ServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+// Runs BCrypt on the dedicated password hash pool. The returned Mono completes on a pool thread, callers that continue
+// with blocking work have to publishOn their own scheduler.
+@Component
+public class PasswordHasher {
+    private final ExecutorService passwordHashExecutor;
+    private final int cost;
+    private final Timer hashTimer;
+    private final Timer verifyTimer;
+    private final Counter rejectedCounter;
+
+    public PasswordHasher(@Qualifier("passwordHashExecutor") ExecutorService passwordHashExecutor, MeterRegistry meterRegistry, @Value("${app.password-hash.bcrypt-cost}") int cost) {
+        if (cost < 4 || cost > 31) {
+            throw new IllegalArgumentException("BCrypt cost must be between 4 and 31");
+        }
+        this.passwordHashExecutor = passwordHashExecutor;
+        this.cost = cost;
+        this.hashTimer = Timer.builder("auth.password.hash.duration")
+                .tag("operation", "hash")
+                .register(meterRegistry);
+        this.verifyTimer = Timer.builder("auth.password.hash.duration")
+                .tag("operation", "verify")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("auth.password.hash.rejected")
+                .register(meterRegistry);
+    }
+
+    public Mono<String> hash(String password) {
+        return submit(() -> BCrypt.hashpw(password, BCrypt.gensalt(cost)), hashTimer);
+    }
+
+    public Mono<Boolean> verify(String password, String hashedPassword) {
+        return submit(() -> BCrypt.checkpw(password, hashedPassword), verifyTimer);
+    }
+
+    // A hash created with a different cost than the configured one, it is replaced on the next successful login
+    public boolean needsRehash(String hashedPassword) {
+        // Format: $2a$10$<salt><hash>
+        if (hashedPassword == null || hashedPassword.length() < 7 || hashedPassword.charAt(3) != '$') {
+            return false;
+        }
+        try {
+            return Integer.parseInt(hashedPassword.substring(4, 6)) != cost;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private <T> Mono<T> submit(Supplier<T> task, Timer timer) {
+        return Mono.defer(() -> {
+            CompletableFuture<T> future;
+            try {
+                future = CompletableFuture.supplyAsync(() -> timer.record(task), passwordHashExecutor);
+            } catch (RejectedExecutionException e) {
+                rejectedCounter.increment();
+                return Mono.error(new ServiceException(429, CommonResponseCode.TOO_MANY_REQUESTS, "Too many requests, please try again later."));
+            }
+            return Mono.fromFuture(future);
+        });
+    }
+}
@@ -0,0 +1,2 @@
+-- Supports keyset pagination of a user's images ordered by (created_at DESC, id DESC)
+CREATE INDEX ON "user_image" ("user_id", "created_at" DESC, "id" DESC);
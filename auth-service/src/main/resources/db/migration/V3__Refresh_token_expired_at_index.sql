@@ -0,0 +1,3 @@
+-- Supports the batched cleanup of expired refresh tokens. Built concurrently so logins and refreshes keep writing to
+-- the table while it builds, which can't run inside a transaction (see the .conf next to this file)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS refresh_token_expired_at_idx ON refresh_token (expired_at);
@@ -0,0 +1,17 @@
+-- Every write to a user's images takes a new value from this sequence, the listing uses it as its version and as the
+-- cursor of the delta mode
+CREATE SEQUENCE "user_image_change_version_seq";
+
+ALTER TABLE "user_image" ADD COLUMN "change_version" BIGINT NOT NULL DEFAULT 0;
+
+-- Latest change version per user, so an unchanged listing can be answered from a single primary key lookup
+CREATE TABLE "user_image_version"
+(
+    "user_id" UUID PRIMARY KEY,
+    "version" BIGINT NOT NULL
+);
+
+CREATE INDEX ON "user_image" ("user_id", "change_version");
+
+ALTER TABLE "user_image_version"
+    ADD FOREIGN KEY ("user_id") REFERENCES "user" ("id");
@@ -0,0 +1,34 @@
+-- One row per (uploaded image, configuration) with the job status and the generated thumbnail, maintained by the event
+-- handler in the same statements that write processing_job and generated_image, so the listing reads it with a range
+-- scan of the primary key instead of crossing every image with every configuration
+CREATE TABLE "image_thumbnail_state"
+(
+    "image_id"           UUID NOT NULL,
+    "configuration_id"   UUID NOT NULL,
+    "job_status"         JOB_STATUS,
+    "generated_image_id" UUID,
+    "width"              INTEGER,
+    "height"             INTEGER,
+    "file_size"          INTEGER,
+    "file_path"          VARCHAR,
+    "file_type"          VARCHAR,
+    "file_hash"          VARCHAR,
+    "created_at"         TIMESTAMP,
+    PRIMARY KEY ("image_id", "configuration_id")
+);
+
+-- Configurations added later are filled in by the event handler's backfill job, which flips this flag when done
+ALTER TABLE "processing_job_configuration" ADD COLUMN "thumbnail_state_backfilled" BOOL NOT NULL DEFAULT FALSE;
+
+INSERT INTO "image_thumbnail_state" (image_id, configuration_id, job_status, generated_image_id, width, height, file_size, file_path, file_type, file_hash, created_at)
+SELECT ui.id, pjc.id, pj.job_status, gi.id, gi.width, gi.height, gi.file_size, gi.file_path, gi.file_type, gi.file_hash, gi.created_at
+FROM "uploaded_image" ui
+CROSS JOIN "processing_job_configuration" pjc
+LEFT JOIN "processing_job" pj ON pj.image_id = ui.id AND pj.configuration_id = pjc.id
+LEFT JOIN "generated_image" gi ON gi.image_id = ui.id AND gi.configuration_id = pjc.id;
+
+ALTER TABLE "image_thumbnail_state"
+    ADD FOREIGN KEY ("image_id") REFERENCES "uploaded_image" ("id");
+
+ALTER TABLE "image_thumbnail_state"
+    ADD FOREIGN KEY ("configuration_id") REFERENCES "processing_job_configuration" ("id");
@@ -0,0 +1,10 @@
+-- Last uploaded image id filled in by the backfill job for a configuration, so a run cut short resumes from there
+ALTER TABLE "processing_job_configuration" ADD COLUMN "thumbnail_state_backfill_after" UUID;
+
+-- Configurations that V5 (or an earlier backfill run) already filled in for every uploaded image don't need the job
+UPDATE "processing_job_configuration" pjc SET thumbnail_state_backfilled = TRUE
+WHERE NOT pjc.thumbnail_state_backfilled
+  AND NOT EXISTS (
+    SELECT 1 FROM "uploaded_image" ui
+    WHERE NOT EXISTS (SELECT 1 FROM "image_thumbnail_state" its WHERE its.image_id = ui.id AND its.configuration_id = pjc.id)
+);
@@ -0,0 +1,26 @@
+package com.hoquangnam45.cdc.image.app.common.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executors;
+
+@Configuration
+public class BlockingSchedulerConfig {
+    // Repository (JDBC/MyBatis) and crypto (BCrypt, KMS) calls block, so they are moved off the Netty event loop onto this
+    // scheduler. "bounded" caps the number of threads and queued tasks, "virtual" runs every call on its own virtual
+    // thread and relies on the connection pool for back pressure.
+    @Bean(destroyMethod = "dispose")
+    public Scheduler blockingScheduler(
+            @Value("${app.blocking.mode:bounded}") String mode,
+            @Value("${app.blocking.thread-cap:64}") int threadCap,
+            @Value("${app.blocking.queued-task-cap:10000}") int queuedTaskCap) {
+        if ("virtual".equalsIgnoreCase(mode)) {
+            return Schedulers.fromExecutorService(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("blocking-", 0).factory()), "blocking");
+        }
+        return Schedulers.newBoundedElastic(threadCap, queuedTaskCap, "blocking");
+    }
+}
@@ -13,4 +13,6 @@ public class CommonConstant {
     public static final String FILE_ID_METADATA = "fileId";
     public static final String ORIGINAL_FILE_ID_METADATA = "originalId";
     public static final String CONFIGURATION_ID_METADATA = "configurationId";
+    // Postgres NOTIFY channel for user image and thumbnail status changes, the event handler mappers use the literal
+    public static final String IMAGE_STATUS_CHANNEL = "image_status";
 }
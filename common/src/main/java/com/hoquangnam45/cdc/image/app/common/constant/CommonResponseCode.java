@@ -8,4 +8,5 @@ public class CommonResponseCode {
     public static final String NOT_FOUND = "NOT_FOUND";
     public static final String UNAUTHENTICATED = "UNAUTHENTICATED";
     public static final String DUPLICATE = "DUPLICATE";
+    public static final String TOO_MANY_REQUESTS = "TOO_MANY_REQUESTS";
 }
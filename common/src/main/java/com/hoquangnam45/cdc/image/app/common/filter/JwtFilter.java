@@ -16,6 +16,7 @@ import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
 import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.text.ParseException;
 import java.util.Collections;
@@ -25,6 +26,7 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class JwtFilter implements WebFilter {
     private final TokenService tokenService;
+    private final Scheduler blockingScheduler;
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
@@ -41,30 +43,38 @@ public class JwtFilter implements WebFilter {
             if (authCookie == null) {
                 return Mono.empty();
             }
-            SecurityContextImpl securityContext = new SecurityContextImpl();
             String accessTokenString = authCookie.getValue();
-            JWTClaimsSet accessToken = null;
-            try {
-                accessToken = tokenService.validateJwtToken(accessTokenString);
-            } catch (Exception e) {
-                log.error("Failed jwt validation. Reason: {}", e.getMessage(), e);
-                return Mono.empty();
-            }
-            try {
-                UUID userId = UUID.fromString(accessToken.getSubject());
-                String username = accessToken.getStringClaim(CommonClaims.USERNAME);
-                String email = accessToken.getStringClaim(CommonClaims.EMAIL);
-                boolean emailConfirmed = accessToken.getBooleanClaim(CommonClaims.EMAIL_CONFIRMED);
-                String phoneNumber = accessToken.getStringClaim(CommonClaims.PHONE_NUMBER);
-                boolean phoneNumberConfirmed = accessToken.getBooleanClaim(CommonClaims.PHONE_NUMBER_CONFIRMED);
-                JwtUser jwtUser = new JwtUser(userId, username, email, phoneNumber, emailConfirmed, phoneNumberConfirmed);
-                UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(jwtUser, accessToken, Collections.emptyList());
-                securityContext.setAuthentication(authenticationToken);
-                return Mono.just(securityContext);
-            } catch (ParseException e) {
-                log.error("Bad jwt format. Reason: {}", e.getMessage(), e);
-                return Mono.empty();
+            JWTClaimsSet verifiedToken = tokenService.findVerifiedJwtToken(accessTokenString);
+            if (verifiedToken != null) {
+                return createSecurityContext(verifiedToken);
             }
+            // Verification may fetch the public key from KMS and runs the ECDSA check, keep both off the event loop
+            return Mono.fromCallable(() -> tokenService.validateJwtToken(accessTokenString))
+                    .subscribeOn(blockingScheduler)
+                    .onErrorResume(e -> {
+                        log.error("Failed jwt validation. Reason: {}", e.getMessage(), e);
+                        return Mono.empty();
+                    })
+                    .flatMap(this::createSecurityContext);
         });
     }
+
+    private Mono<SecurityContext> createSecurityContext(JWTClaimsSet accessToken) {
+        SecurityContextImpl securityContext = new SecurityContextImpl();
+        try {
+            UUID userId = UUID.fromString(accessToken.getSubject());
+            String username = accessToken.getStringClaim(CommonClaims.USERNAME);
+            String email = accessToken.getStringClaim(CommonClaims.EMAIL);
+            boolean emailConfirmed = accessToken.getBooleanClaim(CommonClaims.EMAIL_CONFIRMED);
+            String phoneNumber = accessToken.getStringClaim(CommonClaims.PHONE_NUMBER);
+            boolean phoneNumberConfirmed = accessToken.getBooleanClaim(CommonClaims.PHONE_NUMBER_CONFIRMED);
+            JwtUser jwtUser = new JwtUser(userId, username, email, phoneNumber, emailConfirmed, phoneNumberConfirmed);
+            UsernamePasswordAuthenticationToken authenticationToken = new UsernamePasswordAuthenticationToken(jwtUser, accessToken, Collections.emptyList());
+            securityContext.setAuthentication(authenticationToken);
+            return Mono.just(securityContext);
+        } catch (ParseException e) {
+            log.error("Bad jwt format. Reason: {}", e.getMessage(), e);
+            return Mono.empty();
+        }
+    }
 }
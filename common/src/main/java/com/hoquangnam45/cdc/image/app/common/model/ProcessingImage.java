@@ -2,6 +2,7 @@ package com.hoquangnam45.cdc.image.app.common.model;
 
 import java.awt.image.BufferedImage;
 
+// width / height are the real dimensions of the image, bufferedImage can be a subsampled decode of it
 public record ProcessingImage(boolean isImage, String fileName, Integer fileSize, Integer width, Integer height, String fileType,
                               String ext, String fileHash, BufferedImage bufferedImage) {
 }
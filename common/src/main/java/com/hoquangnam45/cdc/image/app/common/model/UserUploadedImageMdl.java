@@ -28,4 +28,6 @@ public class UserUploadedImageMdl {
     private Instant createdAt;
     private Instant updatedAt;
     private Instant expiredAt;
+    private Instant deletedAt;
+    private Long changeVersion;
 }
@@ -17,6 +17,7 @@ import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.web.server.SecurityWebFilterChain;
 import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.nio.charset.StandardCharsets;
 
@@ -37,13 +38,13 @@ public class SecurityConfig {
 
     @Bean
     @Order(2)
-    public SecurityWebFilterChain userSecurityFilterChain(ServerHttpSecurity http, TokenService tokenService, ObjectMapper objectMapper) {
+    public SecurityWebFilterChain userSecurityFilterChain(ServerHttpSecurity http, TokenService tokenService, ObjectMapper objectMapper, Scheduler blockingScheduler) {
         return http
                 .securityMatcher(ServerWebExchangeMatchers.pathMatchers("/api/**"))
                 .csrf(ServerHttpSecurity.CsrfSpec::disable)
                 .httpBasic(ServerHttpSecurity.HttpBasicSpec::disable)
                 .cors(ServerHttpSecurity.CorsSpec::disable)
-                .addFilterAt(new JwtFilter(tokenService), SecurityWebFiltersOrder.AUTHENTICATION)
+                .addFilterAt(new JwtFilter(tokenService, blockingScheduler), SecurityWebFiltersOrder.AUTHENTICATION)
                 .authorizeExchange(exchange -> exchange.anyExchange().authenticated())
                 .exceptionHandling(exceptionHandling -> exceptionHandling.authenticationEntryPoint((exchange, authenticationException) -> {
                     exchange.getResponse().setRawStatusCode(401);
@@ -0,0 +1,131 @@
+package com.hoquangnam45.cdc.image.app.common.service;
+
+import com.google.cloud.kms.v1.CryptoKeyName;
+import com.google.cloud.kms.v1.CryptoKeyVersion;
+import com.google.cloud.kms.v1.CryptoKeyVersionName;
+import com.google.cloud.kms.v1.KeyManagementServiceClient;
+import com.google.cloud.kms.v1.ListCryptoKeyVersionsRequest;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Scheduler;
+
+import java.security.KeyFactory;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+// kid (KMS key version id) -> verifier for every enabled version of the signing key, similar to a JWKS. The map is
+// loaded at startup and replaced as a whole by the scheduled refresh, so lookups on the request path are a plain map read
+// and never call KMS. A token signed by a version that is not loaded yet fails, and triggers an early background refresh.
+// Services that never verify a jwt (the event handler) turn it off with jwt.verification.enabled=false so they make no
+// KMS calls at all.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "jwt.verification.enabled", havingValue = "true", matchIfMissing = true)
+public class JwtKeyRegistry {
+    private final KeyManagementServiceClient kmsClient;
+    private final CryptoKeyName keyName;
+    private final Scheduler blockingScheduler;
+    private final Duration minRefreshInterval;
+    private final AtomicReference<Map<String, JWSVerifier>> verifiers = new AtomicReference<>(Map.of());
+    private final AtomicReference<Instant> lastRefreshAt = new AtomicReference<>(Instant.EPOCH);
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    public JwtKeyRegistry(
+            KeyManagementServiceClient kmsClient, Scheduler blockingScheduler,
+            @Value("${jwt.gcp.kms.project-id}") String projectId, @Value("${jwt.gcp.kms.location}") String location, @Value("${jwt.gcp.kms.keyring}") String keyRing, @Value("${jwt.gcp.kms.key}") String key,
+            @Value("${jwt.public-key.min-refresh-interval:1m}") Duration minRefreshInterval) {
+        this.kmsClient = kmsClient;
+        this.keyName = CryptoKeyName.of(projectId, location, keyRing, key);
+        this.blockingScheduler = blockingScheduler;
+        this.minRefreshInterval = minRefreshInterval;
+    }
+
+    // Startup fails instead of running with no key, which would reject every token until the next scheduled refresh
+    @PostConstruct
+    public void preload() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to load jwt public keys [keyName = " + keyName + "]", e);
+        } finally {
+            lastRefreshAt.set(Instant.now());
+        }
+        if (verifiers.get().isEmpty()) {
+            throw new IllegalStateException("No enabled jwt public key found [keyName = " + keyName + "]");
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.public-key.refresh-interval:10m}", initialDelayString = "${jwt.public-key.refresh-interval:10m}")
+    public void scheduledRefresh() {
+        refreshQuietly();
+    }
+
+    public JWSVerifier getVerifier(String kid) {
+        JWSVerifier verifier = verifiers.get().get(kid);
+        if (verifier == null && Instant.now().isAfter(lastRefreshAt.get().plus(minRefreshInterval))) {
+            blockingScheduler.schedule(this::refreshQuietly);
+        }
+        return verifier;
+    }
+
+    private void refreshQuietly() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.error("Failed to refresh jwt public keys [keyName = {}]. Reason: {}", keyName, e.getMessage(), e);
+        } finally {
+            lastRefreshAt.set(Instant.now());
+            refreshing.set(false);
+        }
+    }
+
+    private void refresh() throws Exception {
+        Map<String, JWSVerifier> current = verifiers.get();
+        Map<String, JWSVerifier> refreshed = new HashMap<>();
+        ListCryptoKeyVersionsRequest request = ListCryptoKeyVersionsRequest.newBuilder()
+                .setParent(keyName.toString())
+                .setFilter("state=ENABLED")
+                .build();
+        for (CryptoKeyVersion keyVersion : kmsClient.listCryptoKeyVersions(request).iterateAll()) {
+            String kid = CryptoKeyVersionName.parse(keyVersion.getName()).getCryptoKeyVersion();
+            // A key version's public key never changes, only new versions need a KMS call
+            JWSVerifier verifier = current.get(kid);
+            if (verifier == null) {
+                verifier = new ECDSAVerifier(parsePublicKey(kmsClient.getPublicKey(keyVersion.getName()).getPem()));
+            }
+            refreshed.put(kid, verifier);
+        }
+        verifiers.set(Map.copyOf(refreshed));
+        if (!refreshed.keySet().equals(current.keySet())) {
+            log.info("Loaded jwt public keys [keyName = {}, kids = {}]", keyName, refreshed.keySet());
+        }
+    }
+
+    private static ECPublicKey parsePublicKey(String pemKey) throws Exception {
+        String pemKeyContent = pemKey
+                .replace("-----BEGIN PUBLIC KEY-----", "")
+                .replace("-----END PUBLIC KEY-----", "")
+                .replaceAll("\\s", "");
+        byte[] encodedKey = Base64.getDecoder().decode(pemKeyContent);
+
+        // Use "EC" for Elliptic Curve keys (ES256)
+        KeyFactory keyFactory = KeyFactory.getInstance("EC");
+        return (ECPublicKey) keyFactory.generatePublic(new X509EncodedKeySpec(encodedKey));
+    }
+}
@@ -0,0 +1,11 @@
+package com.hoquangnam45.cdc.image.app.common.service;
+
+import com.nimbusds.jose.JOSEException;
+
+public interface JwtSigner {
+    // kid put into the header of issued tokens, verifiers resolve the public key by it
+    String getKeyId();
+
+    // Returns the ES256 signature of the signing input in JOSE (R||S) format
+    byte[] sign(byte[] signingInput) throws JOSEException;
+}
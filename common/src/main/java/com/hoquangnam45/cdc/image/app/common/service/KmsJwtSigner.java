@@ -0,0 +1,56 @@
+package com.hoquangnam45.cdc.image.app.common.service;
+
+import com.google.cloud.kms.v1.AsymmetricSignRequest;
+import com.google.cloud.kms.v1.AsymmetricSignResponse;
+import com.google.cloud.kms.v1.CryptoKeyVersionName;
+import com.google.cloud.kms.v1.Digest;
+import com.google.cloud.kms.v1.KeyManagementServiceClient;
+import com.google.protobuf.ByteString;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.crypto.impl.ECDSA;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Every signature is a KMS asymmetricSign call, the private key never leaves KMS
+@Component
+@ConditionalOnProperty(name = "jwt.signing.mode", havingValue = "kms", matchIfMissing = true)
+public class KmsJwtSigner implements JwtSigner {
+    private final KeyManagementServiceClient kmsClient;
+    private final CryptoKeyVersionName keyName;
+
+    public KmsJwtSigner(KeyManagementServiceClient kmsClient, @Value("${jwt.gcp.kms.project-id}") String projectId, @Value("${jwt.gcp.kms.location}") String location, @Value("${jwt.gcp.kms.keyring}") String keyRing, @Value("${jwt.gcp.kms.key}") String key, @Value("${jwt.gcp.kms.key-version}") String keyVersion) {
+        this.kmsClient = kmsClient;
+        this.keyName = CryptoKeyVersionName.of(projectId, location, keyRing, key, keyVersion);
+    }
+
+    @Override
+    public String getKeyId() {
+        return keyName.getCryptoKeyVersion();
+    }
+
+    @Override
+    public byte[] sign(byte[] signingInput) throws JOSEException {
+        byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(signingInput);
+        } catch (NoSuchAlgorithmException e) {
+            throw new JOSEException(e.getMessage(), e);
+        }
+        Digest sha256Digest = Digest.newBuilder().setSha256(ByteString.copyFrom(hash)).build();
+
+        AsymmetricSignRequest signRequest = AsymmetricSignRequest.newBuilder()
+                .setName(keyName.toString())
+                .setDigest(sha256Digest)
+                .build();
+
+        AsymmetricSignResponse signResponse = kmsClient.asymmetricSign(signRequest);
+
+        // Google KMS returns ECDSA signatures in DER format. JWS (ES256) expects R||S (JOSE) format.
+        byte[] derSignature = signResponse.getSignature().toByteArray();
+        return ECDSA.transcodeSignatureToConcat(derSignature, 64); // 32-byte R + 32-byte S
+    }
+}
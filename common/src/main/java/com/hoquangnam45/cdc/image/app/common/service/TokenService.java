@@ -1,11 +1,5 @@
 package com.hoquangnam45.cdc.image.app.common.service;
 
-import com.google.cloud.kms.v1.AsymmetricSignRequest;
-import com.google.cloud.kms.v1.AsymmetricSignResponse;
-import com.google.cloud.kms.v1.CryptoKeyVersionName;
-import com.google.cloud.kms.v1.Digest;
-import com.google.cloud.kms.v1.KeyManagementServiceClient;
-import com.google.protobuf.ByteString;
 import com.hoquangnam45.cdc.image.app.common.constant.CommonClaims;
 import com.hoquangnam45.cdc.image.app.common.constant.CommonConstant;
 import com.hoquangnam45.cdc.image.app.common.model.UserMdl;
@@ -13,22 +7,17 @@ import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JOSEObjectType;
 import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.JWSHeader;
-import com.nimbusds.jose.crypto.ECDSAVerifier;
-import com.nimbusds.jose.crypto.impl.ECDSA;
+import com.nimbusds.jose.JWSVerifier;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 import com.nimbusds.jwt.proc.DefaultJWTClaimsVerifier;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import java.nio.charset.StandardCharsets;
-import java.security.KeyFactory;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.security.PublicKey;
-import java.security.interfaces.ECPublicKey;
-import java.security.spec.X509EncodedKeySpec;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
@@ -39,18 +28,30 @@ import java.util.UUID;
 
 @Service
 public class TokenService {
-    private PublicKey cachedPublicKeyPem = null;
-    private final KeyManagementServiceClient kmsClient;
-    private final CryptoKeyVersionName keyName;
-
-    public TokenService(KeyManagementServiceClient kmsClient, @Value("${jwt.gcp.kms.project-id}") String projectId, @Value("${jwt.gcp.kms.location}") String location, @Value("${jwt.gcp.kms.keyring}") String keyRing, @Value("${jwt.gcp.kms.key}") String key, @Value("${jwt.gcp.kms.key-version}") String keyVersion) {
-        this.kmsClient = kmsClient;
-        this.keyName = CryptoKeyVersionName.of(projectId, location, keyRing, key, keyVersion);
+    private final JwtSigner jwtSigner;
+    private final String defaultKeyId;
+    private final JwtKeyRegistry keyRegistry;
+    private final VerifiedTokenCache verifiedTokenCache;
+    // Stateless once built, so a single instance is shared by all requests
+    private final DefaultJWTClaimsVerifier<?> claimsVerifier = new DefaultJWTClaimsVerifier<>(
+            null, // No specific audience check for this example, or new Audience("your-api")
+            new JWTClaimsSet.Builder().issuer(CommonConstant.JWT_ISSUER).build(), // Must match this issuer exactly
+            new HashSet<>(Arrays.asList("iss", "sub", "exp", "iat", "jti")),
+            null // No prohibited claims
+    );
+
+    // The key registry is absent when jwt verification is disabled, validateJwtToken then rejects every token
+    public TokenService(JwtSigner jwtSigner, ObjectProvider<JwtKeyRegistry> keyRegistry, VerifiedTokenCache verifiedTokenCache, @Value("${jwt.gcp.kms.key-version}") String keyVersion) {
+        this.jwtSigner = jwtSigner;
+        this.defaultKeyId = keyVersion;
+        this.keyRegistry = keyRegistry.getIfAvailable();
+        this.verifiedTokenCache = verifiedTokenCache;
     }
 
     public String generateJwtToken(Instant now, Duration expireDuration, UserMdl user) throws NoSuchAlgorithmException, JOSEException {
         JWSHeader header = new JWSHeader.Builder(JWSAlgorithm.ES256)
                 .type(JOSEObjectType.JWT)
+                .keyID(jwtSigner.getKeyId())
                 .build();
 
         JWTClaimsSet.Builder claimsSetBuilder = new JWTClaimsSet.Builder()
@@ -76,22 +77,7 @@ public class TokenService {
         SignedJWT unsignedJwt = new SignedJWT(header, claimsSet);
 
         byte[] signingInput = unsignedJwt.getSigningInput();
-
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] hash = digest.digest(signingInput);
-        Digest sha256Digest = Digest.newBuilder().setSha256(ByteString.copyFrom(hash)).build();
-
-        AsymmetricSignRequest signRequest = AsymmetricSignRequest.newBuilder()
-                .setName(keyName.toString())
-                .setDigest(sha256Digest)
-                .build();
-
-        AsymmetricSignResponse signResponse = kmsClient.asymmetricSign(signRequest);
-
-        // Google KMS returns ECDSA signatures in DER format. JWS (ES256) expects R||S (JOSE) format.
-        byte[] derSignature = signResponse.getSignature().toByteArray();
-        byte[] joseSignature = ECDSA.transcodeSignatureToConcat(derSignature, 64); // 32-byte R + 32-byte S
-        String signature = Base64.getUrlEncoder().withoutPadding().encodeToString(joseSignature);
+        String signature = Base64.getUrlEncoder().withoutPadding().encodeToString(jwtSigner.sign(signingInput));
         return new String(signingInput, StandardCharsets.UTF_8) + "." + signature;
     }
 
@@ -107,37 +93,32 @@ public class TokenService {
     }
 
     public JWTClaimsSet validateJwtToken(String jwtToken) throws Exception {
-        if (cachedPublicKeyPem == null) {
-            cachedPublicKeyPem = getPublicKey(kmsClient.getPublicKey(keyName.toString()).getPem());
+        String tokenHash = hashToken(CommonConstant.HASH_ALGORITHM, jwtToken);
+        JWTClaimsSet cachedClaims = verifiedTokenCache.getIfPresent(tokenHash);
+        if (cachedClaims != null) {
+            return cachedClaims;
+        }
+        if (keyRegistry == null) {
+            throw new Exception("JWT verification is disabled");
         }
         SignedJWT signedJWT = SignedJWT.parse(jwtToken);
-        boolean valid = signedJWT.verify(new ECDSAVerifier((ECPublicKey) cachedPublicKeyPem));
-        if (!valid) {
+        // Tokens issued before the kid header was added were all signed by the configured key version
+        String kid = signedJWT.getHeader().getKeyID() != null ? signedJWT.getHeader().getKeyID() : defaultKeyId;
+        JWSVerifier verifier = keyRegistry.getVerifier(kid);
+        if (verifier == null) {
+            throw new Exception("Unknown jwt signing key [kid = " + kid + "]");
+        }
+        if (!signedJWT.verify(verifier)) {
             throw new Exception("JWT signature verification failed");
         }
-        HashSet<String> requiredClaims = new HashSet<>(Arrays.asList("iss", "sub", "exp", "iat", "jti"));
-        DefaultJWTClaimsVerifier<?> claimsVerifier = new DefaultJWTClaimsVerifier<>(
-                null, // No specific audience check for this example, or new Audience("your-api")
-                new JWTClaimsSet.Builder().issuer(CommonConstant.JWT_ISSUER).build(), // Must match this issuer exactly
-                requiredClaims,
-                null // No prohibited claims
-        );
-        claimsVerifier.verify(signedJWT.getJWTClaimsSet(), null);
-        return signedJWT.getJWTClaimsSet();
+        JWTClaimsSet claimsSet = signedJWT.getJWTClaimsSet();
+        claimsVerifier.verify(claimsSet, null);
+        verifiedTokenCache.put(tokenHash, claimsSet);
+        return claimsSet;
     }
 
-    private PublicKey getPublicKey(String pemKey) throws Exception {
-        String pemKeyContent = pemKey
-                .replace("-----BEGIN PUBLIC KEY-----", "")
-                .replace("-----END PUBLIC KEY-----", "")
-                .replaceAll("\\s", "");
-        byte[] encodedKey = Base64.getDecoder().decode(pemKeyContent);
-
-        // Step 3: Use a KeyFactory to generate the PublicKey object
-        // Use "EC" for Elliptic Curve keys (ES256)
-        KeyFactory keyFactory = KeyFactory.getInstance("EC");
-        X509EncodedKeySpec keySpec = new X509EncodedKeySpec(encodedKey);
-
-        return keyFactory.generatePublic(keySpec);
+    // Only looks at tokens that were already verified, so it is cheap enough to call on the event loop
+    public JWTClaimsSet findVerifiedJwtToken(String jwtToken) {
+        return verifiedTokenCache.getIfPresent(hashToken(CommonConstant.HASH_ALGORITHM, jwtToken));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,48 @@
+package com.hoquangnam45.cdc.image.app.common.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.nimbusds.jwt.JWTClaimsSet;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+// token hash -> claims of a token whose signature and claims already passed verification. An entry never outlives the
+// token's exp, and is capped at max-ttl so a revoked signing key stops being trusted within that window.
+@Component
+public class VerifiedTokenCache {
+    private static final String CACHE_NAME = "verifiedToken";
+
+    private final Cache<String, JWTClaimsSet> cache;
+
+    public VerifiedTokenCache(MeterRegistry meterRegistry, @Value("${app.cache.verified-token.maximum-size:100000}") long maximumSize, @Value("${app.cache.verified-token.max-ttl:5m}") Duration maxTtl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(Expiry.creating((String tokenHash, JWTClaimsSet claims) -> {
+                    if (claims.getExpirationTime() == null) {
+                        return maxTtl;
+                    }
+                    Duration untilExpired = Duration.between(Instant.now(), claims.getExpirationTime().toInstant());
+                    if (untilExpired.isNegative()) {
+                        return Duration.ZERO;
+                    }
+                    return untilExpired.compareTo(maxTtl) < 0 ? untilExpired : maxTtl;
+                }))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    public JWTClaimsSet getIfPresent(String tokenHash) {
+        return cache.getIfPresent(tokenHash);
+    }
+
+    public void put(String tokenHash, JWTClaimsSet claims) {
+        cache.put(tokenHash, claims);
+    }
+}
@@ -0,0 +1,85 @@
+// Incremental MD5, only used to compute the content hash GCS reports for an object (base64 of the digest) so an upload
+// can be deduplicated before its bytes are sent. Not for anything security related.
+const S = [
+  7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22,
+  5, 9, 14, 20, 5, 9, 14, 20, 5, 9, 14, 20, 5, 9, 14, 20,
+  4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23,
+  6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21,
+]
+const K = Array.from({ length: 64 }, (_, i) => Math.floor(Math.abs(Math.sin(i + 1)) * 2 ** 32) | 0)
+
+const processBlock = (state, data, offset) => {
+  const words = new Array(16)
+  for (let j = 0; j < 16; j++) {
+    const o = offset + j * 4
+    words[j] = data[o] | (data[o + 1] << 8) | (data[o + 2] << 16) | (data[o + 3] << 24)
+  }
+  let [a, b, c, d] = state
+  for (let i = 0; i < 64; i++) {
+    let f, g
+    if (i < 16) {
+      f = (b & c) | (~b & d); g = i
+    } else if (i < 32) {
+      f = (d & b) | (~d & c); g = (5 * i + 1) % 16
+    } else if (i < 48) {
+      f = b ^ c ^ d; g = (3 * i + 5) % 16
+    } else {
+      f = c ^ (b | ~d); g = (7 * i) % 16
+    }
+    const x = (a + f + K[i] + words[g]) | 0
+    a = d; d = c; c = b
+    b = (b + ((x << S[i]) | (x >>> (32 - S[i])))) | 0
+  }
+  state[0] = (state[0] + a) | 0
+  state[1] = (state[1] + b) | 0
+  state[2] = (state[2] + c) | 0
+  state[3] = (state[3] + d) | 0
+}
+
+export const createMd5 = () => {
+  const state = [0x67452301, 0xefcdab89 | 0, 0x98badcfe | 0, 0x10325476]
+  let pending = new Uint8Array(0)
+  let length = 0
+
+  const update = (bytes) => {
+    length += bytes.length
+    const data = new Uint8Array(pending.length + bytes.length)
+    data.set(pending)
+    data.set(bytes, pending.length)
+    let offset = 0
+    for (; offset + 64 <= data.length; offset += 64) processBlock(state, data, offset)
+    pending = data.slice(offset)
+  }
+
+  const digestBase64 = () => {
+    const bits = length * 8
+    const padLength = (pending.length < 56 ? 56 : 120) - pending.length
+    const tail = new Uint8Array(padLength + 8)
+    tail[0] = 0x80
+    const low = bits % 2 ** 32
+    const high = Math.floor(bits / 2 ** 32)
+    for (let i = 0; i < 4; i++) {
+      tail[padLength + i] = (low >>> (8 * i)) & 0xff
+      tail[padLength + 4 + i] = (high >>> (8 * i)) & 0xff
+    }
+    const savedLength = length
+    update(tail)
+    length = savedLength
+    const digest = []
+    for (const word of state) {
+      for (let i = 0; i < 4; i++) digest.push((word >>> (8 * i)) & 0xff)
+    }
+    return btoa(String.fromCharCode(...digest))
+  }
+
+  return { update, digestBase64 }
+}
+
+// Reads the file in chunks so large originals are never held in memory at once
+export const md5Base64OfFile = async (file, chunkSize = 8 * 1024 * 1024) => {
+  const md5 = createMd5()
+  for (let offset = 0; offset < file.size; offset += chunkSize) {
+    md5.update(new Uint8Array(await file.slice(offset, offset + chunkSize).arrayBuffer()))
+  }
+  return md5.digestBase64()
+}
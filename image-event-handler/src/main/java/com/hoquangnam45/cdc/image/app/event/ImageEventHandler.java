@@ -3,7 +3,6 @@ package com.hoquangnam45.cdc.image.app.event;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.cloud.ReadChannel;
 import com.google.cloud.spring.pubsub.support.BasicAcknowledgeablePubsubMessage;
 import com.google.cloud.spring.pubsub.support.GcpPubSubHeaders;
 import com.google.cloud.storage.Blob;
@@ -18,38 +17,83 @@ import com.hoquangnam45.cdc.image.app.common.model.ProcessJobConfigurationMdl;
 import com.hoquangnam45.cdc.image.app.common.model.ProcessingImage;
 import com.hoquangnam45.cdc.image.app.common.model.ProcessingJobMdl;
 import com.hoquangnam45.cdc.image.app.common.model.UploadedImageMdl;
+import com.hoquangnam45.cdc.image.app.event.model.ThumbnailPlanStep;
+import com.hoquangnam45.cdc.image.app.event.model.ThumbnailWriteResult;
+import com.hoquangnam45.cdc.image.app.event.model.UploadedImageEvent;
+import com.hoquangnam45.cdc.image.app.event.model.UploadedImageEventKey;
+import com.hoquangnam45.cdc.image.app.event.model.UploadedImageEventState;
+import com.hoquangnam45.cdc.image.app.event.model.UploadedImageSummary;
 import com.hoquangnam45.cdc.image.app.event.repository.EventRepository;
-import lombok.RequiredArgsConstructor;
+import com.hoquangnam45.cdc.image.app.event.resize.ResizeEngine;
+import com.hoquangnam45.cdc.image.app.event.resize.ResizeEngineRegistry;
+import com.hoquangnam45.cdc.image.app.event.service.ImageDecoder;
+import com.hoquangnam45.cdc.image.app.event.service.ImageMemoryBudget;
+import com.hoquangnam45.cdc.image.app.event.service.ThumbnailPlanner;
+import com.hoquangnam45.cdc.image.app.event.service.ThumbnailWriter;
+import com.hoquangnam45.cdc.image.app.event.service.UploadedImageCache;
+import com.hoquangnam45.cdc.image.app.event.util.ImageSizeUtil;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.tika.Tika;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.security.core.parameters.P;
 import org.springframework.stereotype.Component;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.nio.channels.Channels;
 import java.text.MessageFormat;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-@RequiredArgsConstructor
 @Component
 @Slf4j
 public class ImageEventHandler {
+    private static final String STAGE_TIMER_NAME = "image.thumbnail.stage";
+    private static final String STAGE_PLAN = "plan";
+    private static final String STAGE_RESIZE = "resize";
+    // Encoding streams straight into the upload, so both are measured as a single stage
+    private static final String STAGE_UPLOAD = "upload";
+    private static final String GCS_CALLS_SUMMARY_NAME = "image.event.gcs.calls";
+
     private final Storage storageClient;
     private final ObjectMapper objectMapper;
     private final EventRepository eventRepository;
+    private final UploadedImageCache uploadedImageCache;
+    private final ImageDecoder imageDecoder;
+    private final ImageMemoryBudget imageMemoryBudget;
+    private final ResizeEngineRegistry resizeEngineRegistry;
+    private final ThumbnailPlanner thumbnailPlanner;
+    private final ThumbnailWriter thumbnailWriter;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService thumbnailExecutor;
+
+    public ImageEventHandler(Storage storageClient, ObjectMapper objectMapper, EventRepository eventRepository, UploadedImageCache uploadedImageCache, ImageDecoder imageDecoder, ImageMemoryBudget imageMemoryBudget, ResizeEngineRegistry resizeEngineRegistry, ThumbnailPlanner thumbnailPlanner, ThumbnailWriter thumbnailWriter, MeterRegistry meterRegistry, @Qualifier("thumbnailExecutor") ExecutorService thumbnailExecutor) {
+        this.storageClient = storageClient;
+        this.objectMapper = objectMapper;
+        this.eventRepository = eventRepository;
+        this.uploadedImageCache = uploadedImageCache;
+        this.imageDecoder = imageDecoder;
+        this.imageMemoryBudget = imageMemoryBudget;
+        this.resizeEngineRegistry = resizeEngineRegistry;
+        this.thumbnailPlanner = thumbnailPlanner;
+        this.thumbnailWriter = thumbnailWriter;
+        this.meterRegistry = meterRegistry;
+        this.thumbnailExecutor = thumbnailExecutor;
+    }
 
     // Example:
     // {
@@ -106,89 +150,225 @@ public class ImageEventHandler {
     //}
     @ServiceActivator(inputChannel = "uploadedImageChannel")
     public void handleImageUploadedEvent(String payloadString, @Header(GcpPubSubHeaders.ORIGINAL_MESSAGE) BasicAcknowledgeablePubsubMessage originalMessage) {
-        UUID processingId = UUID.randomUUID();
+        boolean acknowledge = handleImageUploadedEvents(List.of(payloadString), Runnable::run).get(0);
+        if (acknowledge) {
+            originalMessage.ack();
+        } else {
+            originalMessage.nack();
+        }
+    }
+
+    // Resolves the source blobs and the database state of all payloads up front with one request each, then processes
+    // the events on the given executor. Returns whether each payload should be acked (true) or nacked
+    // (false), in the same order as the payloads.
+    public List<Boolean> handleImageUploadedEvents(List<String> payloadStrings, Executor executor) {
+        List<UploadedImageEvent> events = new ArrayList<>(payloadStrings.size());
+        for (String payloadString : payloadStrings) {
+            events.add(parseEvent(UUID.randomUUID(), payloadString));
+        }
+        List<UploadedImageEvent> parsedEvents = events.stream().filter(Objects::nonNull).toList();
+        Map<BlobId, Blob> sourceBlobs;
+        Map<UploadedImageEventKey, UploadedImageEventState> eventStates;
         try {
-            Map<String, Object> payload;
-            try {
-                payload = objectMapper.readValue(payloadString, new TypeReference<Map<String, Object>>() {
-                });
-            } catch (JsonProcessingException e) {
-                log.error("[processingId = {}] ERROR: Payload for uploaded image event cannot be parsed: [Payload = {}]. Reason: {}", payloadString, processingId, e.getMessage(), e);
-                originalMessage.ack();
-                return;
+            sourceBlobs = getSourceBlobs(parsedEvents);
+            // Deleted sources don't need any state
+            eventStates = resolveEventStates(parsedEvents.stream()
+                    .filter(event -> sourceBlobs.get(event.sourceBlobId()) != null)
+                    .map(event -> new UploadedImageEventKey(event.userImageId(), sourceBlobs.get(event.sourceBlobId()).getMd5()))
+                    .distinct()
+                    .toList());
+        } catch (Throwable e) {
+            log.error("ERROR: Failed resolving {} uploaded image events. Reason: {}", parsedEvents.size(), e.getMessage(), e);
+            // Unparseable payloads are acked as usual, everything else is retried
+            return events.stream().map(Objects::isNull).toList();
+        }
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(events.size());
+        // Events for the same content have to see each other's writes, so they are chained and looked up again
+        Map<String, CompletableFuture<Boolean>> lastResultByMd5Hash = new HashMap<>();
+        for (UploadedImageEvent event : events) {
+            if (event == null) {
+                results.add(CompletableFuture.completedFuture(true));
+                continue;
             }
-            String resourceName;
-            try {
-                Object resourceNameObj = ((Map<String, Object>) payload.get("protoPayload")).get("resourceName");
-                if (!(resourceNameObj instanceof String)) {
-                    log.error("[processingId = {}] ERROR: Resource name need to be presence and need to be a string", processingId);
-                    originalMessage.ack();
-                    return;
-                }
-                resourceName = (String) resourceNameObj;
-            } catch (Throwable e) {
-                log.error("[processingId = {}] ERROR: Unrecognized payload. Reason: {}", processingId, e.getMessage(), e);
-                originalMessage.ack();
-                return;
+            Blob sourceBlob = sourceBlobs.get(event.sourceBlobId());
+            CompletableFuture<Boolean> result;
+            if (sourceBlob == null) {
+                result = CompletableFuture.supplyAsync(() -> processEvent(event, null, null), executor);
+            } else {
+                String md5Hash = sourceBlob.getMd5();
+                UploadedImageEventKey eventKey = new UploadedImageEventKey(event.userImageId(), md5Hash);
+                CompletableFuture<Boolean> previousResult = lastResultByMd5Hash.get(md5Hash);
+                result = previousResult == null
+                        ? CompletableFuture.supplyAsync(() -> processEvent(event, sourceBlob, eventStates.get(eventKey)), executor)
+                        : previousResult.handleAsync((ignored, e) -> processEvent(event, sourceBlob, resolveEventStates(List.of(eventKey)).get(eventKey)), executor);
+                lastResultByMd5Hash.put(md5Hash, result);
             }
-            log.info("[processingId = {}] Start processing for object {}", processingId, resourceName);
-            BlobId sourceBlobId;
-            try {
-                sourceBlobId = parseGcsAuditResourceName(resourceName);
-            } catch (Exception e) {
-                log.error("[processingId = {}] ERROR: Fail to parse resource name into bucket name and object name. Reason: {}", processingId, e.getMessage(), e);
-                originalMessage.ack();
-                return;
+            results.add(result.exceptionally(e -> {
+                log.error("[processingId = {}] ERROR: Unknown error. Reason: {}", event.processingId(), e.getMessage(), e);
+                return false;
+            }));
+        }
+        return results.stream().map(CompletableFuture::join).toList();
+    }
+
+    // Returns null when the payload can't be processed and should just be acked
+    private UploadedImageEvent parseEvent(UUID processingId, String payloadString) {
+        Map<String, Object> payload;
+        try {
+            payload = objectMapper.readValue(payloadString, new TypeReference<Map<String, Object>>() {
+            });
+        } catch (JsonProcessingException e) {
+            log.error("[processingId = {}] ERROR: Payload for uploaded image event cannot be parsed: [Payload = {}]. Reason: {}", payloadString, processingId, e.getMessage(), e);
+            return null;
+        }
+        String resourceName;
+        try {
+            Object resourceNameObj = ((Map<String, Object>) payload.get("protoPayload")).get("resourceName");
+            if (!(resourceNameObj instanceof String)) {
+                log.error("[processingId = {}] ERROR: Resource name need to be presence and need to be a string", processingId);
+                return null;
             }
-            String bucketName = sourceBlobId.getBucket();
-            String objectName = sourceBlobId.getName();
-            String[] parts = objectName.split("/", 3);
+            resourceName = (String) resourceNameObj;
+        } catch (Throwable e) {
+            log.error("[processingId = {}] ERROR: Unrecognized payload. Reason: {}", processingId, e.getMessage(), e);
+            return null;
+        }
+        log.info("[processingId = {}] Start processing for object {}", processingId, resourceName);
+        try {
+            BlobId sourceBlobId = parseGcsAuditResourceName(resourceName);
+            String[] parts = sourceBlobId.getName().split("/", 3);
             UUID userId = UUID.fromString(parts[1]);
             UUID userImageId = UUID.fromString(parts[2]);
+            return new UploadedImageEvent(processingId, resourceName, sourceBlobId, userId, userImageId);
+        } catch (Exception e) {
+            log.error("[processingId = {}] ERROR: Fail to parse resource name into bucket name and object name. Reason: {}", processingId, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    // One storage batch request instead of a get per event, missing blobs are mapped to null
+    private Map<BlobId, Blob> getSourceBlobs(List<UploadedImageEvent> events) {
+        Map<BlobId, Blob> sourceBlobs = new HashMap<>();
+        if (events.isEmpty()) {
+            return sourceBlobs;
+        }
+        List<BlobId> sourceBlobIds = events.stream().map(UploadedImageEvent::sourceBlobId).distinct().toList();
+        List<Blob> blobs = sourceBlobIds.size() == 1 ? Collections.singletonList(storageClient.get(sourceBlobIds.get(0))) : storageClient.get(sourceBlobIds);
+        for (int i = 0; i < sourceBlobIds.size(); i++) {
+            sourceBlobs.put(sourceBlobIds.get(i), blobs.get(i));
+        }
+        return sourceBlobs;
+    }
+
+    // The per content part of the state is answered from the cache when possible, cached content then only needs the
+    // expiry of its user image (invalid content not even that, it is rejected before the expiry check). Everything else
+    // is resolved with a single statement, which also fills the cache.
+    private Map<UploadedImageEventKey, UploadedImageEventState> resolveEventStates(List<UploadedImageEventKey> eventKeys) {
+        Map<UploadedImageEventKey, UploadedImageEventState> eventStates = new HashMap<>();
+        Map<UploadedImageEventKey, UploadedImageSummary> cachedUploadedImages = new HashMap<>();
+        List<UploadedImageEventKey> unresolvedEventKeys = new ArrayList<>();
+        for (UploadedImageEventKey eventKey : eventKeys) {
+            UploadedImageSummary uploadedImage = uploadedImageCache.getIfPresent(eventKey.fileHash());
+            if (uploadedImage != null) {
+                cachedUploadedImages.put(eventKey, uploadedImage);
+            } else {
+                unresolvedEventKeys.add(eventKey);
+            }
+        }
+        if (!cachedUploadedImages.isEmpty()) {
+            List<UUID> userImageIds = cachedUploadedImages.entrySet().stream()
+                    .filter(entry -> entry.getValue().status() != ImageStatus.INVALID)
+                    .map(entry -> entry.getKey().userImageId())
+                    .distinct()
+                    .toList();
+            Set<UUID> expiredUserImageIds = userImageIds.isEmpty() ? Set.of() : new HashSet<>(eventRepository.getExpiredUserImageIds(userImageIds, Instant.now()));
+            cachedUploadedImages.forEach((eventKey, uploadedImage) -> {
+                UploadedImageEventState eventState = new UploadedImageEventState();
+                eventState.setUserImageId(eventKey.userImageId());
+                eventState.setFileHash(eventKey.fileHash());
+                eventState.setUserImageExpired(expiredUserImageIds.contains(eventKey.userImageId()));
+                eventState.setUploadedImageId(uploadedImage.id());
+                eventState.setUploadedImageStatus(uploadedImage.status());
+                eventState.setConfigurations(uploadedImage.configurations());
+                eventStates.put(eventKey, eventState);
+            });
+        }
+        if (unresolvedEventKeys.isEmpty()) {
+            return eventStates;
+        }
+        for (UploadedImageEventState eventState : eventRepository.getUploadedImageEventStates(unresolvedEventKeys, Instant.now())) {
+            eventStates.put(new UploadedImageEventKey(eventState.getUserImageId(), eventState.getFileHash()), eventState);
+            if (eventState.getUploadedImageId() != null) {
+                uploadedImageCache.put(new UploadedImageSummary(eventState.getUploadedImageId(), eventState.getFileHash(), eventState.getUploadedImageStatus(), List.copyOf(eventState.getConfigurations())));
+            }
+        }
+        return eventStates;
+    }
+
+    // Returns whether the message should be acked. eventState is only null when the source blob is gone.
+    private boolean processEvent(UploadedImageEvent event, Blob uploadFileBlob, UploadedImageEventState eventState) {
+        UUID processingId = event.processingId();
+        String resourceName = event.resourceName();
+        BlobId sourceBlobId = event.sourceBlobId();
+        String bucketName = sourceBlobId.getBucket();
+        String objectName = sourceBlobId.getName();
+        UUID userImageId = event.userImageId();
+        // Number of GCS requests made for this message, including the ones made by the thumbnail workers. The source
+        // blob metadata is fetched in one batch for all messages but still counted as a request for each of them.
+        AtomicInteger gcsCalls = new AtomicInteger(1);
+        // Held until every thumbnail of the message is done, they all keep references to the decoded image
+        ImageMemoryBudget.Reservation reservation = imageMemoryBudget.newReservation();
+        try {
 //            int affectedRow = eventRepository.updateUserImageStatusRunning(userImageId);
 //            if (affectedRow == 0) {
-//                originalMessage.nack();
+//                return false;
 //            }
-            Blob uploadFileBlob = storageClient.get(sourceBlobId);
             if (uploadFileBlob == null || uploadFileBlob.getDeleteTimeOffsetDateTime() != null) {
                 log.info("[processingId = {}] {} has been deleted", processingId, resourceName);
-                originalMessage.ack();
                 eventRepository.updateUserImageStatus(userImageId, ImageStatus.EXPIRED, null);
-                return;
+                return true;
             }
 
-            String md5Hash = uploadFileBlob.getMd5();
-            ImageStatus uploadedImageStatus = eventRepository.getUploadedImageStatus(md5Hash);
+            ImageStatus uploadedImageStatus = eventState.getUploadedImageStatus();
             if (uploadedImageStatus == ImageStatus.INVALID) {
                 log.info("[processingId = {}] {} has been deleted because invalid image", processingId, resourceName);
+                gcsCalls.incrementAndGet();
                 storageClient.delete(sourceBlobId);
                 eventRepository.updateUserImageStatus(userImageId, ImageStatus.INVALID, null);
-                originalMessage.ack();
-                return;
+                return true;
             }
-            UUID uploadedImageId = eventRepository.getUploadedImageId(md5Hash);
+            UUID uploadedImageId = eventState.getUploadedImageId();
 
             // Retrieve stored user metadata
             String fileName = uploadFileBlob.getMetadata().get(CommonConstant.FILE_NAME_METADATA.toLowerCase());
             if (fileName == null) {
-                originalMessage.ack();
+                gcsCalls.incrementAndGet();
                 storageClient.delete(uploadFileBlob.getBlobId());
-                return;
+                return true;
             }
-            Boolean isExpired = eventRepository.isUserImageExpired(userImageId, Instant.now());
-            if (isExpired) {
+            if (eventState.hasUserImageExpired()) {
                 log.info("[processingId = {}] {} has been deleted because reaching expire time", processingId, resourceName);
+                gcsCalls.incrementAndGet();
                 storageClient.delete(sourceBlobId);
                 eventRepository.updateUserImageStatus(userImageId, ImageStatus.EXPIRED, null);
-                originalMessage.ack();
-                return;
+                return true;
             }
 
-            boolean hasFileBeenUploaded = checkIfFileHasBeenUploaded(uploadedImageId, bucketName);
+            // The uploaded_image row is only saved after the copy to uploaded/<id> succeeded, so there is no need to ask GCS
+            boolean hasFileBeenUploaded = uploadedImageId != null && uploadedImageStatus == ImageStatus.UPLOADED;
+            // Decoded at most once per message and reused for thumbnails. The source blob has the same content as
+            // uploaded/<id> and is read before it gets deleted, so uploaded/<id> never needs to be read back.
+            ProcessingImage processingImage = null;
+            // A new uploaded image has no jobs yet, so every configuration is pending for it as well
+            List<ProcessJobConfigurationMdl> unprocessedJobConfigurations = eventState.getPendingConfigurations();
             if (!hasFileBeenUploaded) {
-                ProcessingImage processingImage = loadingUploadImage(uploadFileBlob);
+                // A decode reads the blob twice, once for the header and once for the pixels
+                gcsCalls.addAndGet(unprocessedJobConfigurations.isEmpty() ? 1 : 2);
+                processingImage = unprocessedJobConfigurations.isEmpty()
+                        ? imageDecoder.probe(uploadFileBlob)
+                        : imageDecoder.decode(uploadFileBlob, unprocessedJobConfigurations, reservation);
                 if (!processingImage.isImage()) {
-                    originalMessage.ack();
+                    gcsCalls.incrementAndGet();
                     storageClient.delete(uploadFileBlob.getBlobId());
                     eventRepository.updateUserImageStatus(userImageId, ImageStatus.INVALID, null);
                     if (uploadedImageId == null) {
@@ -204,9 +384,10 @@ public class ImageEventHandler {
                                 Instant.now(),
                                 null
                         ));
+                        uploadedImageCache.invalidate(processingImage.fileHash());
                     }
                     log.info("[processingId = {}] Object {} is not image", processingId, objectName);
-                    return;
+                    return true;
                 }
                 UUID newUploadedImageId;
                 if (uploadedImageId == null) {
@@ -226,10 +407,12 @@ public class ImageEventHandler {
                         )).build();
                 Storage.CopyRequest copyRequest = Storage.CopyRequest.newBuilder().setTarget(destBlobInfo).setSource(sourceBlobId).build();
                 try {
-                    storageClient.copy(copyRequest);
+                    gcsCalls.incrementAndGet();
+                    Blob destBlob = storageClient.copy(copyRequest).getResult();
+                    gcsCalls.incrementAndGet();
                     storageClient.delete(sourceBlobId);
                     if (uploadedImageId == null) {
-                        createNewUploadedImage(destBlobInfo.getBlobId());
+                        createNewUploadedImage(destBlob);
                     }
                 } catch (Exception e) {
                     log.warn("[processingId = {}] {} has been processed by other job", processingId, resourceName);
@@ -242,70 +425,100 @@ public class ImageEventHandler {
                 log.info("[processingId = {}] Finished uploading user image {} -> {}", processingId, objectName, uploadedImageId);
             } catch (Exception e) {
                 log.error("[processingId = {}] Error saving user image for uploaded image event. Reason: {}", processingId, e.getMessage(), e);
-                originalMessage.nack();
-                return;
+                return false;
             }
 
-            List<ProcessJobConfigurationMdl> unprocessedJobConfigurations = eventRepository.getAllUnprocessingJobConfigurations(uploadedImageId);
             if (!unprocessedJobConfigurations.isEmpty()) {
-                String destObjectName = "uploaded/" + uploadedImageId;
-                BlobId destBlobId = BlobId.of(bucketName, destObjectName);
-                Blob uploadedFileBlob = storageClient.get(destBlobId);
-                ProcessingImage processingImage = loadingUploadImage(uploadedFileBlob);
-                for (ProcessJobConfigurationMdl unprocessJobConfiguration : unprocessedJobConfigurations) {
-                    UUID jobId = null;
-                    try {
-                        JobStatus jobStatus = eventRepository.getJobStatus(unprocessJobConfiguration.getId(), uploadedImageId);
-                        if (jobStatus == JobStatus.RUNNING || jobStatus == JobStatus.COMPLETED) {
-                            continue;
-                        }
-                        jobId = startProcessingJob(unprocessJobConfiguration.getId(), uploadedImageId);
-                        log.info("[processingId = {}] Start processing thumbnail image generation [jobId = {}, configurationId = {}, imageId = {}]", processingId, jobId, unprocessJobConfiguration.getId(), uploadedImageId);
-                        ProcessingImage thumbnailProcessingImage = processConfiguration(unprocessJobConfiguration, processingImage);
-                        String destThumbnailName = "thumbnails/" + uploadedImageId + "/" + unprocessJobConfiguration.getId();
-                        BlobInfo destThumbBlobInfo = BlobInfo.newBuilder(bucketName, destThumbnailName)
-                                .setContentType(thumbnailProcessingImage.fileType())
-                                .setMetadata(Map.of(
-                                        CommonConstant.ORIGINAL_FILE_ID_METADATA, uploadedImageId.toString(),
-                                        CommonConstant.WIDTH_METADATA, thumbnailProcessingImage.width().toString(),
-                                        CommonConstant.HEIGHT_METADATA, thumbnailProcessingImage.height().toString(),
-                                        CommonConstant.EXTENSION_METADATA, thumbnailProcessingImage.ext(),
-                                        CommonConstant.MIMETYPE_METADATA, thumbnailProcessingImage.fileType(),
-                                        CommonConstant.CONFIGURATION_ID_METADATA, unprocessJobConfiguration.getId().toString()
-                                )).build();
-                        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()) {
-                            ImageIO.write(thumbnailProcessingImage.bufferedImage(), thumbnailProcessingImage.ext(), byteArrayOutputStream);
-                            storageClient.create(destThumbBlobInfo, byteArrayOutputStream.toByteArray());
-                            createNewGeneratedImage(destThumbBlobInfo.getBlobId());
-                        }
-                        log.info("[processingId = {}] Finished processing thumbnail image generation [jobId = {}, configurationId = {}, imageId = {}]", processingId, jobId, unprocessJobConfiguration.getId(), uploadedImageId);
-                        eventRepository.updateProcessingJob(jobId, null, JobStatus.COMPLETED, Instant.now());
-                    } catch (Throwable e) {
-                        log.info("[processingId = {}] Failed processing thumbnail image generation [jobId = {}, configurationId = {}, imageId = {}]", processingId, jobId, unprocessJobConfiguration.getId(), uploadedImageId);
-                        if (jobId != null) {
-                            eventRepository.updateProcessingJob(jobId, MessageFormat.format("[processingId = {0}] Failed processing job[id = {1}]. Reason: {2}", processingId, jobId, e.getMessage()), JobStatus.FAILED, Instant.now());
-                        }
-                    }
+                if (processingImage == null || processingImage.bufferedImage() == null) {
+                    // Already uploaded by an earlier message (the source is kept around in that case), or only probed
+                    gcsCalls.addAndGet(2);
+                    processingImage = imageDecoder.decode(uploadFileBlob, unprocessedJobConfigurations, reservation);
                 }
+                ProcessingImage sourceProcessingImage = processingImage;
+                long planStartedAt = System.nanoTime();
+                List<ThumbnailPlanStep> thumbnailPlan = thumbnailPlanner.plan(unprocessedJobConfigurations, sourceProcessingImage.width(), sourceProcessingImage.height());
+                log.info("[processingId = {}] Planned {} thumbnails for image {} in {}ms", processingId, thumbnailPlan.size(), uploadedImageId, recordStage(STAGE_PLAN, planStartedAt));
+                UUID imageId = uploadedImageId;
+                // Every thumbnail waits for the thumbnail it is resized from, falling back to the original if that one is skipped or failed
+                List<CompletableFuture<BufferedImage>> thumbnailJobs = new ArrayList<>();
+                for (ThumbnailPlanStep thumbnailPlanStep : thumbnailPlan) {
+                    CompletableFuture<BufferedImage> sourceImage = thumbnailPlanStep.sourceIndex() == ThumbnailPlanStep.ORIGINAL_SOURCE
+                            ? CompletableFuture.completedFuture(null)
+                            : thumbnailJobs.get(thumbnailPlanStep.sourceIndex()).exceptionally(e -> null);
+                    thumbnailJobs.add(sourceImage.thenApplyAsync(derivedImage -> generateThumbnail(processingId, bucketName, imageId, thumbnailPlanStep.configuration(), sourceProcessingImage, derivedImage != null ? derivedImage : sourceProcessingImage.bufferedImage(), gcsCalls), thumbnailExecutor));
+                }
+                CompletableFuture.allOf(thumbnailJobs.toArray(CompletableFuture[]::new)).join();
             }
             log.info("[processingId = {}] Finished all thumbnail generation for image {}", processingId, uploadedImageId);
-            originalMessage.ack();
+            return true;
         } catch (Throwable e) {
             log.error("[processingId = {}] ERROR: Unknown error. Reason: {}", processingId, e.getMessage(), e);
-            originalMessage.nack();
+            return false;
+        } finally {
+            reservation.close();
+            meterRegistry.summary(GCS_CALLS_SUMMARY_NAME).record(gcsCalls.get());
         }
     }
 
-    private UUID startProcessingJob(UUID configurationId, UUID uploadedImageId) {
-        eventRepository.removeLastProcessingJob(configurationId, uploadedImageId);
-        UUID jobId = UUID.randomUUID();
-        ProcessingJobMdl processingJobMdl = new ProcessingJobMdl(jobId, uploadedImageId, configurationId, JobStatus.RUNNING, Instant.now(), null, null);
-        eventRepository.saveProcessingJob(processingJobMdl);
-        return jobId;
+    // Returns the resized image so smaller thumbnails can be generated from it, null when the job was skipped or failed
+    private BufferedImage generateThumbnail(UUID processingId, String bucketName, UUID uploadedImageId, ProcessJobConfigurationMdl unprocessJobConfiguration, ProcessingImage processingImage, BufferedImage sourceImage, AtomicInteger gcsCalls) {
+        UUID jobId = null;
+        try {
+            jobId = claimProcessingJob(unprocessJobConfiguration.getId(), uploadedImageId);
+            if (jobId == null) {
+                // Picked up by another worker since the event state was resolved
+                return null;
+            }
+            uploadedImageCache.invalidate(processingImage.fileHash());
+            log.info("[processingId = {}] Start processing thumbnail image generation [jobId = {}, configurationId = {}, imageId = {}]", processingId, jobId, unprocessJobConfiguration.getId(), uploadedImageId);
+            long resizeStartedAt = System.nanoTime();
+            ProcessingImage thumbnailProcessingImage = processConfiguration(unprocessJobConfiguration, processingImage, sourceImage);
+            long resizeMs = recordStage(STAGE_RESIZE, resizeStartedAt);
+            String destThumbnailName = "thumbnails/" + uploadedImageId + "/" + unprocessJobConfiguration.getId();
+            BlobInfo destThumbBlobInfo = BlobInfo.newBuilder(bucketName, destThumbnailName)
+                    .setContentType(thumbnailProcessingImage.fileType())
+                    .setMetadata(Map.of(
+                            CommonConstant.ORIGINAL_FILE_ID_METADATA, uploadedImageId.toString(),
+                            CommonConstant.WIDTH_METADATA, thumbnailProcessingImage.width().toString(),
+                            CommonConstant.HEIGHT_METADATA, thumbnailProcessingImage.height().toString(),
+                            CommonConstant.EXTENSION_METADATA, thumbnailProcessingImage.ext(),
+                            CommonConstant.MIMETYPE_METADATA, thumbnailProcessingImage.fileType(),
+                            CommonConstant.CONFIGURATION_ID_METADATA, unprocessJobConfiguration.getId().toString()
+                    )).build();
+            long uploadStartedAt = System.nanoTime();
+            gcsCalls.incrementAndGet();
+            ThumbnailWriteResult writeResult = thumbnailWriter.write(destThumbBlobInfo, thumbnailProcessingImage.bufferedImage(), thumbnailProcessingImage.ext());
+            long uploadMs = recordStage(STAGE_UPLOAD, uploadStartedAt);
+            createNewGeneratedImage(uploadedImageId, unprocessJobConfiguration.getId(), thumbnailProcessingImage.fileType(), writeResult);
+            log.info("[processingId = {}] Finished processing thumbnail image generation [jobId = {}, configurationId = {}, imageId = {}, resizeMs = {}, uploadMs = {}, size = {}]", processingId, jobId, unprocessJobConfiguration.getId(), uploadedImageId, resizeMs, uploadMs, writeResult.size());
+            eventRepository.updateProcessingJob(jobId, null, JobStatus.COMPLETED, Instant.now());
+            return thumbnailProcessingImage.bufferedImage();
+        } catch (Throwable e) {
+            log.info("[processingId = {}] Failed processing thumbnail image generation [jobId = {}, configurationId = {}, imageId = {}]", processingId, jobId, unprocessJobConfiguration.getId(), uploadedImageId);
+            if (jobId != null) {
+                eventRepository.updateProcessingJob(jobId, MessageFormat.format("[processingId = {0}] Failed processing job[id = {1}]. Reason: {2}", processingId, jobId, e.getMessage()), JobStatus.FAILED, Instant.now());
+            }
+            return null;
+        } finally {
+            if (jobId != null) {
+                // Covers the generated image and the final job status
+                uploadedImageCache.invalidate(processingImage.fileHash());
+            }
+        }
+    }
+
+    private long recordStage(String stage, long startedAtNanos) {
+        long elapsedNanos = System.nanoTime() - startedAtNanos;
+        meterRegistry.timer(STAGE_TIMER_NAME, "stage", stage).record(elapsedNanos, TimeUnit.NANOSECONDS);
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    private UUID claimProcessingJob(UUID configurationId, UUID uploadedImageId) {
+        ProcessingJobMdl processingJobMdl = new ProcessingJobMdl(UUID.randomUUID(), uploadedImageId, configurationId, JobStatus.RUNNING, Instant.now(), null, null);
+        return eventRepository.claimProcessingJob(processingJobMdl);
     }
 
-    private void createNewUploadedImage(BlobId blobId) {
-        Blob blob = storageClient.get(blobId);
+    private void createNewUploadedImage(Blob blob) {
         Map<String, String> metadata = blob.getMetadata();
         UUID fileId = UUID.fromString(metadata.get(CommonConstant.FILE_ID_METADATA));
         Integer width = Integer.valueOf(metadata.get(CommonConstant.WIDTH_METADATA));
@@ -314,42 +527,24 @@ public class ImageEventHandler {
         String fileType = metadata.get(CommonConstant.MIMETYPE_METADATA);
         UploadedImageMdl uploadedImageMdl = new UploadedImageMdl(fileId, width, height, blob.getSize().intValue(), filePath, fileType, blob.getMd5(), ImageStatus.UPLOADED, blob.getCreateTimeOffsetDateTime().toInstant(), blob.getUpdateTimeOffsetDateTime().toInstant());
         eventRepository.saveUploadedImage(uploadedImageMdl);
+        uploadedImageCache.invalidate(blob.getMd5());
     }
 
-    private void createNewGeneratedImage(BlobId blobId) {
-        Blob blob = storageClient.get(blobId);
-        String md5Hash = blob.getMd5();
-        Boolean hasImageThumbnailBeenGenerated = eventRepository.hasImageThumbnailGenerated(md5Hash);
-        if (hasImageThumbnailBeenGenerated != null && hasImageThumbnailBeenGenerated) {
-            return;
-        }
-        Map<String, String> metadata = blob.getMetadata();
-        UUID originalFileId = UUID.fromString(metadata.get(CommonConstant.ORIGINAL_FILE_ID_METADATA));
-        UUID configurationId = UUID.fromString(metadata.get(CommonConstant.CONFIGURATION_ID_METADATA));
-        Integer width = Integer.valueOf(metadata.get(CommonConstant.WIDTH_METADATA));
-        Integer height = Integer.valueOf(metadata.get(CommonConstant.HEIGHT_METADATA));
-        String filePath = "gs://" + blob.getBucket() + "/" + blob.getName();
-        String fileType = metadata.get(CommonConstant.MIMETYPE_METADATA);
-        GeneratedImageMdl generatedImageMdl = new GeneratedImageMdl(UUID.randomUUID(), originalFileId, configurationId, width, height, blob.getSize().intValue(), filePath, fileType, blob.getMd5(), blob.getCreateTimeOffsetDateTime().toInstant());
+    private void createNewGeneratedImage(UUID originalFileId, UUID configurationId, String fileType, ThumbnailWriteResult writeResult) {
+        // Thumbnails with identical content are skipped by the insert itself (ON CONFLICT DO NOTHING)
+        String md5Hash = writeResult.md5Hash();
+        BlobId blobId = writeResult.blobId();
+        String filePath = "gs://" + blobId.getBucket() + "/" + blobId.getName();
+        GeneratedImageMdl generatedImageMdl = new GeneratedImageMdl(UUID.randomUUID(), originalFileId, configurationId, writeResult.width(), writeResult.height(), (int) writeResult.size(), filePath, fileType, md5Hash, writeResult.createdAt());
         eventRepository.saveGeneratedImage(generatedImageMdl);
     }
 
-    private ProcessingImage processConfiguration(ProcessJobConfigurationMdl processJobConfiguration, ProcessingImage processingImage) {
-        Integer newWidth = processJobConfiguration.getWidth();
-        Integer newHeight = processJobConfiguration.getHeight();
-        if (newHeight != null && newWidth == null && processJobConfiguration.getKeepRatio()) {
-            newWidth = BigDecimal.valueOf(newHeight).divide(BigDecimal.valueOf(processingImage.height()), 12, RoundingMode.HALF_EVEN).multiply(BigDecimal.valueOf(processingImage.width())).intValue();
-        } else if (newHeight == null && newWidth != null && processJobConfiguration.getKeepRatio()) {
-            newHeight = BigDecimal.valueOf(newWidth).divide(BigDecimal.valueOf(processingImage.width()), 12, RoundingMode.HALF_EVEN).multiply(BigDecimal.valueOf(processingImage.height())).intValue();
-        } else if (newHeight == null && newWidth == null && processJobConfiguration.getScale() != null) {
-            newHeight = BigDecimal.valueOf(processingImage.height()).multiply(processJobConfiguration.getScale()).intValue();
-            newWidth = BigDecimal.valueOf(processingImage.width()).multiply(processJobConfiguration.getScale()).intValue();
-        } else {
-            throw new IllegalStateException("Can't determine width / height for this configuration " + processJobConfiguration.getId());
-        }
-        BufferedImage resizedImage = new BufferedImage(newWidth, newHeight, processingImage.bufferedImage().getType());
-        Graphics2D g2d = resizedImage.createGraphics();
-        g2d.drawImage(processingImage.bufferedImage(), 0, 0, newWidth, newHeight, null);
+    private ProcessingImage processConfiguration(ProcessJobConfigurationMdl processJobConfiguration, ProcessingImage processingImage, BufferedImage sourceImage) {
+        Dimension targetSize = ImageSizeUtil.resolveTargetSize(processJobConfiguration, processingImage.width(), processingImage.height());
+        int newWidth = targetSize.width;
+        int newHeight = targetSize.height;
+        ResizeEngine resizeEngine = resizeEngineRegistry.get(processJobConfiguration.getQuality());
+        BufferedImage resizedImage = resizeEngine.resize(sourceImage, newWidth, newHeight);
         String mimeType = processJobConfiguration.getFileType() != null ? processJobConfiguration.getFileType() : processingImage.fileType();
         String outputFileType = processJobConfiguration.getOutputFileType() != null ? processJobConfiguration.getOutputFileType() : processingImage.ext();
         return new ProcessingImage(true, processingImage.fileName(), null, newWidth, newHeight, mimeType, outputFileType, null, resizedImage);
@@ -368,42 +563,4 @@ public class ImageEventHandler {
         String objectName = parts[5];
         return BlobId.of(bucketName, objectName);
     }
-
-    private boolean checkIfFileHasBeenUploaded(UUID uploadedImageId, String bucketName) {
-        if (uploadedImageId == null) {
-            return false;
-        }
-        String processedObjectName = "uploaded/" + uploadedImageId;
-        Blob blob = storageClient.get(bucketName, processedObjectName);
-        return blob != null;
-    }
-
-    private boolean isImage(String mimeType) {
-        return mimeType != null && mimeType.startsWith("image/");
-    }
-
-    private ProcessingImage loadingUploadImage(Blob blob) throws IOException {
-        String mimeType;
-        int width;
-        int height;
-        BufferedImage bufferedImage;
-        String fileName = blob.getName();
-        Integer fileSize = blob.getSize().intValue();
-        String fileHash = blob.getMd5();
-        String ext;
-        try (ReadChannel readChannel = storageClient.reader(blob.getBlobId());
-             InputStream inputStream = Channels.newInputStream(readChannel);
-             BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStream)) {
-            Tika tika = new Tika();
-            mimeType = tika.detect(bufferedInputStream);
-            ext = mimeType.split("/")[1];
-            if (!isImage(mimeType)) {
-                return new ProcessingImage(false, fileName, fileSize, null, null, mimeType, ext, fileHash, null);
-            }
-            bufferedImage = ImageIO.read(bufferedInputStream);
-            width = bufferedImage.getWidth();
-            height = bufferedImage.getHeight();
-        }
-        return new ProcessingImage(true, fileName, fileSize, width, height, mimeType, ext, fileHash, bufferedImage);
-    }
 }
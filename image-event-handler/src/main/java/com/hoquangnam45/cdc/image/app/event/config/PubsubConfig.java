@@ -5,10 +5,15 @@ import com.google.cloud.spring.pubsub.integration.AckMode;
 import com.google.cloud.spring.pubsub.integration.inbound.PubSubInboundChannelAdapter;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.integration.channel.DirectChannel;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Configuration
 public class PubsubConfig {
@@ -18,6 +23,7 @@ public class PubsubConfig {
     }
 
     @Bean
+    @ConditionalOnProperty(name = "app.subscription.batch.enabled", havingValue = "false", matchIfMissing = true)
     public PubSubInboundChannelAdapter uploadedImageChannelAdapter(PubSubTemplate pubSubTemplate, @Qualifier("uploadedImageChannel") MessageChannel uploadedImageChannel, @Value("${app.subscription.upload-image}") String subscriptionName) {
         PubSubInboundChannelAdapter adapter =
                 new PubSubInboundChannelAdapter(pubSubTemplate, subscriptionName);
@@ -27,4 +33,11 @@ public class PubsubConfig {
 
         return adapter;
     }
+
+    // Processes the events of a pulled batch concurrently, takes the place of the subscriber executor threads in batch mode
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "app.subscription.batch.enabled", havingValue = "true")
+    public ExecutorService uploadedImageEventExecutor(@Value("${app.subscription.batch.concurrency}") int concurrency) {
+        return Executors.newFixedThreadPool(concurrency, new CustomizableThreadFactory("uploaded-image-event-"));
+    }
 }
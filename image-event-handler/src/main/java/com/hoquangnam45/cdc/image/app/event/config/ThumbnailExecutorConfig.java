@@ -0,0 +1,29 @@
+package com.hoquangnam45.cdc.image.app.event.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class ThumbnailExecutorConfig {
+    // Thumbnail generation is CPU bound (resize + encode), so the pool is sized to the available cores by default.
+    // When the queue is full the submitting Pub/Sub thread runs the job itself, which throttles message intake.
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService thumbnailExecutor(@Value("${app.thumbnail.parallelism}") int parallelism, @Value("${app.thumbnail.queue-capacity}") int queueCapacity) {
+        int poolSize = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("thumbnail-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+}
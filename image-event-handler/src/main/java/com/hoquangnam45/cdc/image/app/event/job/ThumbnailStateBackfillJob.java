@@ -0,0 +1,125 @@
+package com.hoquangnam45.cdc.image.app.event.job;
+
+import com.hoquangnam45.cdc.image.app.event.model.ThumbnailStateBackfillCursor;
+import com.hoquangnam45.cdc.image.app.event.repository.EventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+// New uploads get a thumbnail state row for every configuration when they are saved, this job covers the other
+// direction: a configuration added later gets a row for every existing uploaded image. The last image id filled in is
+// saved on the configuration after every batch, so a run cut short by its time budget resumes from there next time.
+@Component
+@Slf4j
+public class ThumbnailStateBackfillJob {
+    private final EventRepository eventRepository;
+    private final DataSource dataSource;
+    private final int batchSize;
+    private final Duration pause;
+    private final Duration timeBudget;
+    private final long lockKey;
+    private final Counter batchCounter;
+    private final Counter configurationCounter;
+    private final Counter skippedCounter;
+
+    public ThumbnailStateBackfillJob(
+            EventRepository eventRepository, DataSource dataSource, MeterRegistry meterRegistry,
+            @Value("${app.thumbnail.state-backfill.batch-size}") int batchSize,
+            @Value("${app.thumbnail.state-backfill.pause}") Duration pause,
+            @Value("${app.thumbnail.state-backfill.time-budget}") Duration timeBudget,
+            @Value("${app.thumbnail.state-backfill.lock-key}") long lockKey) {
+        this.eventRepository = eventRepository;
+        this.dataSource = dataSource;
+        this.batchSize = batchSize;
+        this.pause = pause;
+        this.timeBudget = timeBudget;
+        this.lockKey = lockKey;
+        this.batchCounter = meterRegistry.counter("event.thumbnail_state.backfill.batches");
+        this.configurationCounter = meterRegistry.counter("event.thumbnail_state.backfill.configurations");
+        this.skippedCounter = meterRegistry.counter("event.thumbnail_state.backfill.skipped");
+    }
+
+    @Scheduled(fixedDelayString = "${app.thumbnail.state-backfill.interval}")
+    public void backfillThumbnailState() {
+        if (eventRepository.getThumbnailStateBackfillCursors().isEmpty()) {
+            return;
+        }
+        // Same as the refresh token cleanup, a session level advisory lock on its own connection keeps it to one replica
+        try (Connection lockConnection = dataSource.getConnection()) {
+            if (!tryAdvisoryLock(lockConnection)) {
+                skippedCounter.increment();
+                log.info("Skipped thumbnail state backfill job, another instance is running it.");
+                return;
+            }
+            try {
+                // Read again under the lock, the cursors may have moved while another instance held it
+                backfillConfigurations(eventRepository.getThumbnailStateBackfillCursors());
+            } finally {
+                advisoryUnlock(lockConnection);
+            }
+        } catch (SQLException e) {
+            log.error("Failed thumbnail state backfill job. Reason: {}", e.getMessage(), e);
+        }
+    }
+
+    private void backfillConfigurations(List<ThumbnailStateBackfillCursor> cursors) {
+        Instant deadline = Instant.now().plus(timeBudget);
+        for (ThumbnailStateBackfillCursor cursor : cursors) {
+            UUID configurationId = cursor.getConfigurationId();
+            UUID afterImageId = cursor.getAfterImageId();
+            log.info("Starting thumbnail state backfill [configurationId = {}, afterImageId = {}]", configurationId, afterImageId);
+            int batches = 0;
+            while (true) {
+                afterImageId = eventRepository.backfillThumbnailState(configurationId, afterImageId, batchSize);
+                batchCounter.increment();
+                batches++;
+                if (afterImageId == null) {
+                    break;
+                }
+                eventRepository.saveThumbnailStateBackfillCursor(configurationId, afterImageId);
+                if (!Instant.now().plus(pause).isBefore(deadline)) {
+                    log.info("Thumbnail state backfill ran out of its time budget, continuing on the next run [configurationId = {}]", configurationId);
+                    return;
+                }
+                try {
+                    Thread.sleep(pause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            eventRepository.markThumbnailStateBackfilled(configurationId);
+            configurationCounter.increment();
+            log.info("Completed thumbnail state backfill [configurationId = {}, batches = {}]", configurationId, batches);
+        }
+    }
+
+    private boolean tryAdvisoryLock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+            statement.setLong(1, lockKey);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    private void advisoryUnlock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+            statement.setLong(1, lockKey);
+            statement.execute();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.hoquangnam45.cdc.image.app.event.job;
+
+import com.google.cloud.spring.pubsub.core.PubSubTemplate;
+import com.google.cloud.spring.pubsub.support.AcknowledgeablePubsubMessage;
+import com.hoquangnam45.cdc.image.app.event.ImageEventHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Replaces the streaming inbound adapter when batch mode is enabled. Pulls up to max-messages or whatever arrived
+// within max-wait-ms of the first message, hands the whole batch to the handler and acks/nacks it in bulk.
+// The subscription's ack deadline has to cover the processing time of a full batch.
+@Component
+@ConditionalOnProperty(name = "app.subscription.batch.enabled", havingValue = "true")
+@Slf4j
+public class UploadedImageBatchConsumer implements SmartLifecycle {
+    private static final long EMPTY_PULL_BACKOFF_MS = 50;
+    private static final long ERROR_BACKOFF_MS = 1000;
+
+    private final PubSubTemplate pubSubTemplate;
+    private final ImageEventHandler imageEventHandler;
+    private final ExecutorService uploadedImageEventExecutor;
+    private final String subscriptionName;
+    private final int maxMessages;
+    private final long maxWaitMs;
+
+    private volatile boolean running = false;
+    private Thread consumerThread;
+
+    public UploadedImageBatchConsumer(PubSubTemplate pubSubTemplate, ImageEventHandler imageEventHandler, @Qualifier("uploadedImageEventExecutor") ExecutorService uploadedImageEventExecutor, @Value("${app.subscription.upload-image}") String subscriptionName, @Value("${app.subscription.batch.max-messages}") int maxMessages, @Value("${app.subscription.batch.max-wait-ms}") long maxWaitMs) {
+        this.pubSubTemplate = pubSubTemplate;
+        this.imageEventHandler = imageEventHandler;
+        this.uploadedImageEventExecutor = uploadedImageEventExecutor;
+        this.subscriptionName = subscriptionName;
+        this.maxMessages = maxMessages;
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        consumerThread = new Thread(this::consume, "uploaded-image-batch-consumer");
+        consumerThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            // Let the in-flight batch finish so it gets acked instead of redelivered
+            consumerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void consume() {
+        while (running) {
+            try {
+                List<AcknowledgeablePubsubMessage> messages = pullBatch();
+                if (messages.isEmpty()) {
+                    continue;
+                }
+                List<String> payloads = messages.stream().map(message -> message.getPubsubMessage().getData().toStringUtf8()).toList();
+                List<Boolean> results = imageEventHandler.handleImageUploadedEvents(payloads, uploadedImageEventExecutor);
+                List<AcknowledgeablePubsubMessage> ackMessages = new ArrayList<>();
+                List<AcknowledgeablePubsubMessage> nackMessages = new ArrayList<>();
+                for (int i = 0; i < messages.size(); i++) {
+                    (results.get(i) ? ackMessages : nackMessages).add(messages.get(i));
+                }
+                if (!ackMessages.isEmpty()) {
+                    pubSubTemplate.ack(ackMessages).join();
+                }
+                if (!nackMessages.isEmpty()) {
+                    pubSubTemplate.nack(nackMessages).join();
+                }
+                log.info("Processed batch of {} uploaded image events [acked = {}, nacked = {}]", messages.size(), ackMessages.size(), nackMessages.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Throwable e) {
+                log.error("ERROR: Failed processing uploaded image event batch. Reason: {}", e.getMessage(), e);
+                try {
+                    Thread.sleep(ERROR_BACKOFF_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private List<AcknowledgeablePubsubMessage> pullBatch() throws InterruptedException {
+        // Blocks until at least one message is available (or the server side pull times out)
+        List<AcknowledgeablePubsubMessage> messages = new ArrayList<>(pubSubTemplate.pull(subscriptionName, maxMessages, false));
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        while (running && !messages.isEmpty() && messages.size() < maxMessages) {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs <= 0) {
+                break;
+            }
+            List<AcknowledgeablePubsubMessage> moreMessages = pubSubTemplate.pull(subscriptionName, maxMessages - messages.size(), true);
+            if (moreMessages.isEmpty()) {
+                Thread.sleep(Math.min(remainingMs, EMPTY_PULL_BACKOFF_MS));
+            } else {
+                messages.addAll(moreMessages);
+            }
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,21 @@
+package com.hoquangnam45.cdc.image.app.event.model;
+
+import com.hoquangnam45.cdc.image.app.common.enums.JobStatus;
+import com.hoquangnam45.cdc.image.app.common.model.ProcessJobConfigurationMdl;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// A configuration together with its job status and whether its thumbnail exists for one uploaded image
+@Setter
+@Getter
+@NoArgsConstructor
+public class ProcessJobConfigurationState extends ProcessJobConfigurationMdl {
+    private JobStatus jobStatus;
+    private boolean generated;
+
+    // Running and completed jobs are left alone, failed ones are retried
+    public boolean isPending() {
+        return !generated && (jobStatus == null || jobStatus == JobStatus.FAILED);
+    }
+}
@@ -0,0 +1,13 @@
+package com.hoquangnam45.cdc.image.app.event.model;
+
+import com.hoquangnam45.cdc.image.app.common.model.ProcessJobConfigurationMdl;
+
+// sourceIndex points to the step whose output is resized into this one, -1 means the decoded original.
+// width / height are null when the configuration can't be resolved to a size, that job fails on its own.
+public record ThumbnailPlanStep(ProcessJobConfigurationMdl configuration, Integer width, Integer height, int sourceIndex) {
+    public static final int ORIGINAL_SOURCE = -1;
+
+    public long area() {
+        return width == null || height == null ? 0 : (long) width * height;
+    }
+}
@@ -0,0 +1,16 @@
+package com.hoquangnam45.cdc.image.app.event.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.UUID;
+
+// A configuration still being backfilled and the last uploaded image id already filled in, null when not started
+@Setter
+@Getter
+@NoArgsConstructor
+public class ThumbnailStateBackfillCursor {
+    private UUID configurationId;
+    private UUID afterImageId;
+}
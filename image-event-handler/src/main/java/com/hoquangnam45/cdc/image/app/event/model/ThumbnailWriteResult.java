@@ -0,0 +1,9 @@
+package com.hoquangnam45.cdc.image.app.event.model;
+
+import com.google.cloud.storage.BlobId;
+
+import java.time.Instant;
+
+// md5Hash is base64 encoded, same as Blob.getMd5()
+public record ThumbnailWriteResult(BlobId blobId, long size, String md5Hash, int width, int height, Instant createdAt) {
+}
@@ -0,0 +1,8 @@
+package com.hoquangnam45.cdc.image.app.event.model;
+
+import com.google.cloud.storage.BlobId;
+
+import java.util.UUID;
+
+public record UploadedImageEvent(UUID processingId, String resourceName, BlobId sourceBlobId, UUID userId, UUID userImageId) {
+}
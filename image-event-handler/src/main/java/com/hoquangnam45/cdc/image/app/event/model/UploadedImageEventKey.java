@@ -0,0 +1,6 @@
+package com.hoquangnam45.cdc.image.app.event.model;
+
+import java.util.UUID;
+
+public record UploadedImageEventKey(UUID userImageId, String fileHash) {
+}
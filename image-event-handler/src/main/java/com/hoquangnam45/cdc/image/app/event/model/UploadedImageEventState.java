@@ -0,0 +1,32 @@
+package com.hoquangnam45.cdc.image.app.event.model;
+
+import com.hoquangnam45.cdc.image.app.common.enums.ImageStatus;
+import com.hoquangnam45.cdc.image.app.common.model.ProcessJobConfigurationMdl;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// Everything the handler needs to know from the database about a (userImageId, md5) pair
+@Setter
+@Getter
+@NoArgsConstructor
+public class UploadedImageEventState {
+    private UUID userImageId;
+    private String fileHash;
+    private Boolean userImageExpired;
+    private UUID uploadedImageId;
+    private ImageStatus uploadedImageStatus;
+    private List<ProcessJobConfigurationState> configurations = new ArrayList<>();
+
+    public boolean hasUserImageExpired() {
+        return Boolean.TRUE.equals(userImageExpired);
+    }
+
+    public List<ProcessJobConfigurationMdl> getPendingConfigurations() {
+        return configurations.stream().filter(ProcessJobConfigurationState::isPending).map(ProcessJobConfigurationMdl.class::cast).toList();
+    }
+}
@@ -0,0 +1,11 @@
+package com.hoquangnam45.cdc.image.app.event.model;
+
+import com.hoquangnam45.cdc.image.app.common.enums.ImageStatus;
+
+import java.util.List;
+import java.util.UUID;
+
+// The part of the event state that only depends on the content hash, every configuration with its job status and
+// whether its thumbnail exists for the uploaded image
+public record UploadedImageSummary(UUID id, String fileHash, ImageStatus status, List<ProcessJobConfigurationState> configurations) {
+}
@@ -3,43 +3,47 @@ package com.hoquangnam45.cdc.image.app.event.repository;
 import com.hoquangnam45.cdc.image.app.common.enums.ImageStatus;
 import com.hoquangnam45.cdc.image.app.common.enums.JobStatus;
 import com.hoquangnam45.cdc.image.app.common.model.GeneratedImageMdl;
-import com.hoquangnam45.cdc.image.app.common.model.ProcessJobConfigurationMdl;
 import com.hoquangnam45.cdc.image.app.common.model.ProcessingJobMdl;
 import com.hoquangnam45.cdc.image.app.common.model.UploadedImageMdl;
+import com.hoquangnam45.cdc.image.app.event.model.ThumbnailStateBackfillCursor;
+import com.hoquangnam45.cdc.image.app.event.model.UploadedImageEventKey;
+import com.hoquangnam45.cdc.image.app.event.model.UploadedImageEventState;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
 @Mapper
 @Repository
 public interface EventRepository {
-    Boolean isUserImageExpired(@Param("userImageId") UUID userImageId, @Param("now") Instant now);
+    List<UploadedImageEventState> getUploadedImageEventStates(@Param("eventKeys") Collection<UploadedImageEventKey> eventKeys, @Param("now") Instant now);
+
+    // Same expiry rule as getUploadedImageEventStates, for events whose content state is already cached
+    List<UUID> getExpiredUserImageIds(@Param("userImageIds") Collection<UUID> userImageIds, @Param("now") Instant now);
 
     void saveUploadedImage(UploadedImageMdl request);
 
     void saveGeneratedImage(GeneratedImageMdl request);
 
-    Boolean hasImageThumbnailGenerated(@Param("md5Hash") String md5Hash);
-
-    UUID getUploadedImageId(@Param("md5Hash") String md5Hash);
-
-    List<ProcessJobConfigurationMdl> getAllUnprocessingJobConfigurations(@Param("imageId") UUID imageId);
-
     void updateProcessingJob(@Param("jobId") UUID jobId, @Param("remark") String remark, @Param("jobStatus") JobStatus jobStatus, @Param("endedAt") Instant endedAt);
 
-    void saveProcessingJob(ProcessingJobMdl processingJobMdl);
-
-    void removeLastProcessingJob(@Param("configurationId") UUID configurationId, @Param("uploadedImageId") UUID uploadedImageId);
+    // Returns the job id, or null when the configuration already has a job that isn't failed
+    UUID claimProcessingJob(ProcessingJobMdl processingJobMdl);
 
     void updateUserImageStatus(@Param("id") UUID id, @Param("status") ImageStatus status, @Param("uploadedImageId") UUID uploadedImageId);
 
     int updateUserImageStatusRunning(@Param("id") UUID id);
 
-    ImageStatus getUploadedImageStatus(@Param("md5Hash") String md5Hash);
+    List<ThumbnailStateBackfillCursor> getThumbnailStateBackfillCursors();
+
+    // Returns the last uploaded image id of the batch, or null when there are no images after afterImageId
+    UUID backfillThumbnailState(@Param("configurationId") UUID configurationId, @Param("afterImageId") UUID afterImageId, @Param("batchSize") int batchSize);
+
+    void saveThumbnailStateBackfillCursor(@Param("configurationId") UUID configurationId, @Param("afterImageId") UUID afterImageId);
 
-    JobStatus getJobStatus(@Param("configurationId") UUID configurationId, @Param("uploadedImageId") UUID uploadedImageId);
+    void markThumbnailStateBackfilled(@Param("configurationId") UUID configurationId);
 }
@@ -0,0 +1,143 @@
+package com.hoquangnam45.cdc.image.app.event.resize;
+
+import org.springframework.stereotype.Component;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+// Box filter over the exact source area covered by every target pixel, done as two separable passes on the
+// packed int[] raster. Channels are averaged premultiplied by alpha so transparent pixels don't bleed color.
+@Component
+public class AreaAveragingResizeEngine implements ResizeEngine {
+    @Override
+    public ResizeQuality quality() {
+        return ResizeQuality.AREA_AVERAGING;
+    }
+
+    @Override
+    public BufferedImage resize(BufferedImage source, int width, int height) {
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+        if (width >= sourceWidth || height >= sourceHeight) {
+            // Averaging only helps when shrinking on both axes
+            return Graphics2DResizeEngine.draw(source, width, height, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        }
+        boolean hasAlpha = source.getColorModel().hasAlpha();
+        int[] sourcePixels = readPixels(source, hasAlpha);
+        Spans columns = Spans.of(sourceWidth, width);
+        Spans rows = Spans.of(sourceHeight, height);
+
+        // Every source row is resampled horizontally into one row of interleaved a, r, g, b sums and accumulated straight
+        // into the target row covering it, so only two rows of floats are kept whatever the source height. Neighbouring
+        // target rows share at most their boundary source row, which is kept from the previous target row.
+        BufferedImage target = new BufferedImage(width, height, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] targetPixels = ((DataBufferInt) target.getRaster().getDataBuffer()).getData();
+        float[] horizontal = new float[width * 4];
+        int horizontalRow = -1;
+        float[] accumulator = new float[width * 4];
+        for (int y = 0; y < height; y++) {
+            Arrays.fill(accumulator, 0);
+            for (int i = rows.start[y]; i <= rows.end[y]; i++) {
+                if (i != horizontalRow) {
+                    resampleRow(sourcePixels, i * sourceWidth, columns, hasAlpha, horizontal);
+                    horizontalRow = i;
+                }
+                float weight = rows.weight(y, i);
+                for (int j = 0; j < accumulator.length; j++) {
+                    accumulator[j] += weight * horizontal[j];
+                }
+            }
+            float area = rows.total[y];
+            int targetOffset = y * width;
+            for (int x = 0; x < width; x++) {
+                int index = x * 4;
+                float a = accumulator[index];
+                int alpha = clamp(a / (area * columns.total[x]));
+                int red = a > 0 ? clamp(accumulator[index + 1] / a) : 0;
+                int green = a > 0 ? clamp(accumulator[index + 2] / a) : 0;
+                int blue = a > 0 ? clamp(accumulator[index + 3] / a) : 0;
+                targetPixels[targetOffset + x] = (alpha << 24) | (red << 16) | (green << 8) | blue;
+            }
+        }
+        return target;
+    }
+
+    private static void resampleRow(int[] sourcePixels, int sourceOffset, Spans columns, boolean hasAlpha, float[] row) {
+        for (int x = 0; x < columns.start.length; x++) {
+            float a = 0;
+            float r = 0;
+            float g = 0;
+            float b = 0;
+            for (int i = columns.start[x]; i <= columns.end[x]; i++) {
+                int pixel = sourcePixels[sourceOffset + i];
+                float weight = columns.weight(x, i) * (hasAlpha ? pixel >>> 24 : 255);
+                a += weight;
+                r += weight * ((pixel >> 16) & 0xFF);
+                g += weight * ((pixel >> 8) & 0xFF);
+                b += weight * (pixel & 0xFF);
+            }
+            int index = x * 4;
+            row[index] = a;
+            row[index + 1] = r;
+            row[index + 2] = g;
+            row[index + 3] = b;
+        }
+    }
+
+    private static int[] readPixels(BufferedImage source, boolean hasAlpha) {
+        int type = hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage packed = source;
+        if (source.getType() != type || source.getRaster().getParent() != null) {
+            // Let Java2D convert whatever the decoder produced into a packed int raster in one pass
+            packed = new BufferedImage(source.getWidth(), source.getHeight(), type);
+            Graphics2D g2d = packed.createGraphics();
+            try {
+                g2d.drawImage(source, 0, 0, null);
+            } finally {
+                g2d.dispose();
+            }
+        }
+        return ((DataBufferInt) packed.getRaster().getDataBuffer()).getData();
+    }
+
+    private static int clamp(float value) {
+        return Math.min(255, Math.max(0, Math.round(value)));
+    }
+
+    // For every target index: the first / last source index it covers, the partial coverage of those two and the total coverage
+    private record Spans(int[] start, int[] end, float[] firstWeight, float[] lastWeight, float[] total) {
+        static Spans of(int sourceLength, int targetLength) {
+            int[] start = new int[targetLength];
+            int[] end = new int[targetLength];
+            float[] firstWeight = new float[targetLength];
+            float[] lastWeight = new float[targetLength];
+            float[] total = new float[targetLength];
+            double scale = (double) sourceLength / targetLength;
+            for (int t = 0; t < targetLength; t++) {
+                double left = t * scale;
+                double right = Math.min(sourceLength, (t + 1) * scale);
+                start[t] = (int) left;
+                end[t] = Math.min(sourceLength - 1, (int) Math.ceil(right) - 1);
+                if (start[t] == end[t]) {
+                    firstWeight[t] = (float) (right - left);
+                    lastWeight[t] = firstWeight[t];
+                } else {
+                    firstWeight[t] = (float) (start[t] + 1 - left);
+                    lastWeight[t] = (float) (right - end[t]);
+                }
+                total[t] = (float) (right - left);
+            }
+            return new Spans(start, end, firstWeight, lastWeight, total);
+        }
+
+        float weight(int t, int i) {
+            if (i == start[t]) {
+                return firstWeight[t];
+            }
+            return i == end[t] ? lastWeight[t] : 1f;
+        }
+    }
+}
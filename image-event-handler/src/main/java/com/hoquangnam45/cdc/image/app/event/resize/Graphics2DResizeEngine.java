@@ -0,0 +1,27 @@
+package com.hoquangnam45.cdc.image.app.event.resize;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+public abstract class Graphics2DResizeEngine implements ResizeEngine {
+    static BufferedImage draw(BufferedImage source, int width, int height, Object interpolation) {
+        BufferedImage target = new BufferedImage(width, height, imageType(source));
+        Graphics2D g2d = target.createGraphics();
+        try {
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, interpolation == RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR
+                    ? RenderingHints.VALUE_RENDER_SPEED
+                    : RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g2d.dispose();
+        }
+        return target;
+    }
+
+    // Decoded images are often TYPE_CUSTOM, which can't be used to create a new image
+    static int imageType(BufferedImage source) {
+        return source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+    }
+}
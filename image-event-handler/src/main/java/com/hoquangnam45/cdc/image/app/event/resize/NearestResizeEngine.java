@@ -0,0 +1,19 @@
+package com.hoquangnam45.cdc.image.app.event.resize;
+
+import org.springframework.stereotype.Component;
+
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+@Component
+public class NearestResizeEngine extends Graphics2DResizeEngine {
+    @Override
+    public ResizeQuality quality() {
+        return ResizeQuality.NEAREST;
+    }
+
+    @Override
+    public BufferedImage resize(BufferedImage source, int width, int height) {
+        return draw(source, width, height, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+    }
+}
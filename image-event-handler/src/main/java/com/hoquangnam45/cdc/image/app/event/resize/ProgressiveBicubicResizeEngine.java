@@ -0,0 +1,29 @@
+package com.hoquangnam45.cdc.image.app.event.resize;
+
+import org.springframework.stereotype.Component;
+
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+@Component
+public class ProgressiveBicubicResizeEngine extends Graphics2DResizeEngine {
+    @Override
+    public ResizeQuality quality() {
+        return ResizeQuality.PROGRESSIVE_BICUBIC;
+    }
+
+    // Halve with bilinear until within 2x of the target, then do the last step with bicubic.
+    // A single bilinear / bicubic step only samples a few source pixels, so large ratios alias badly.
+    @Override
+    public BufferedImage resize(BufferedImage source, int width, int height) {
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        while (currentWidth > width * 2 || currentHeight > height * 2) {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            current = draw(current, currentWidth, currentHeight, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+        return draw(current, width, height, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+    }
+}
@@ -0,0 +1,10 @@
+package com.hoquangnam45.cdc.image.app.event.resize;
+
+import java.awt.image.BufferedImage;
+
+public interface ResizeEngine {
+    ResizeQuality quality();
+
+    // Implementations must be thread safe, the same engine resizes images for several jobs concurrently
+    BufferedImage resize(BufferedImage source, int width, int height);
+}
@@ -0,0 +1,27 @@
+package com.hoquangnam45.cdc.image.app.event.resize;
+
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+@Component
+public class ResizeEngineRegistry {
+    private final Map<ResizeQuality, ResizeEngine> resizeEngines = new EnumMap<>(ResizeQuality.class);
+
+    public ResizeEngineRegistry(List<ResizeEngine> resizeEngines) {
+        for (ResizeEngine resizeEngine : resizeEngines) {
+            this.resizeEngines.put(resizeEngine.quality(), resizeEngine);
+        }
+    }
+
+    public ResizeEngine get(Integer quality) {
+        ResizeQuality resizeQuality = ResizeQuality.fromQuality(quality);
+        ResizeEngine resizeEngine = resizeEngines.get(resizeQuality);
+        if (resizeEngine == null) {
+            throw new IllegalStateException("No resize engine registered for quality " + resizeQuality);
+        }
+        return resizeEngine;
+    }
+}
@@ -0,0 +1,24 @@
+package com.hoquangnam45.cdc.image.app.event.resize;
+
+// Ordered from the lowest to the highest quality
+public enum ResizeQuality {
+    NEAREST,
+    BILINEAR,
+    PROGRESSIVE_BICUBIC,
+    AREA_AVERAGING;
+
+    // Configuration quality is on a 0 - 100 scale, missing quality uses progressive bicubic
+    public static ResizeQuality fromQuality(Integer quality) {
+        if (quality == null) {
+            return PROGRESSIVE_BICUBIC;
+        }
+        if (quality < 25) {
+            return NEAREST;
+        } else if (quality < 50) {
+            return BILINEAR;
+        } else if (quality < 85) {
+            return PROGRESSIVE_BICUBIC;
+        }
+        return AREA_AVERAGING;
+    }
+}
@@ -0,0 +1,98 @@
+package com.hoquangnam45.cdc.image.app.event.service;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.Storage;
+import com.hoquangnam45.cdc.image.app.common.model.ProcessJobConfigurationMdl;
+import com.hoquangnam45.cdc.image.app.common.model.ProcessingImage;
+import com.hoquangnam45.cdc.image.app.event.util.ImageSizeUtil;
+import lombok.RequiredArgsConstructor;
+import org.apache.tika.Tika;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.Iterator;
+import java.util.List;
+
+@Component
+@RequiredArgsConstructor
+public class ImageDecoder {
+    private final Tika tika = new Tika();
+    private final Storage storageClient;
+
+    // Enough for the header of common formats, larger headers just take a few more requests
+    private static final int HEADER_CHUNK_SIZE = 64 * 1024;
+
+    // Only read the image header, the returned image has no pixel data
+    public ProcessingImage probe(Blob blob) throws IOException {
+        return read(blob, HEADER_CHUNK_SIZE, null);
+    }
+
+    // Decode the pixel data subsampled down to the largest size needed by the given configurations. The header is read
+    // first with its own read channel, which is closed before the estimated memory needed for the image and its
+    // thumbnails is acquired through the reservation, so a message waiting for the memory budget doesn't hold a GCS
+    // connection. The blob is then read again for the decode, two reads in total.
+    public ProcessingImage decode(Blob blob, List<ProcessJobConfigurationMdl> processJobConfigurations, ImageMemoryBudget.Reservation reservation) throws IOException, InterruptedException {
+        ProcessingImage header = probe(blob);
+        if (!header.isImage()) {
+            return header;
+        }
+        int subsampling = ImageSizeUtil.resolveSubsampling(processJobConfigurations, header.width(), header.height());
+        reservation.acquire(ImageSizeUtil.estimateWorkingSetBytes(processJobConfigurations, header.width(), header.height(), subsampling));
+        return read(blob, null, subsampling);
+    }
+
+    // Decodes the pixel data when subsampling is given, otherwise stops after the header
+    private ProcessingImage read(Blob blob, Integer chunkSize, Integer subsampling) throws IOException {
+        String fileName = blob.getName();
+        Integer fileSize = blob.getSize().intValue();
+        String fileHash = blob.getMd5();
+        try (ReadChannel readChannel = storageClient.reader(blob.getBlobId())) {
+            if (chunkSize != null) {
+                readChannel.setChunkSize(chunkSize);
+            }
+            try (InputStream inputStream = Channels.newInputStream(readChannel);
+                 BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStream)) {
+                String mimeType = tika.detect(bufferedInputStream);
+                String ext = mimeType.split("/")[1];
+                if (!isImage(mimeType)) {
+                    return new ProcessingImage(false, fileName, fileSize, null, null, mimeType, ext, fileHash, null);
+                }
+                try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(bufferedInputStream)) {
+                    Iterator<ImageReader> imageReaders = ImageIO.getImageReaders(imageInputStream);
+                    if (!imageReaders.hasNext()) {
+                        // Image mime type but no decoder available for it, we can't generate anything from it
+                        return new ProcessingImage(false, fileName, fileSize, null, null, mimeType, ext, fileHash, null);
+                    }
+                    ImageReader imageReader = imageReaders.next();
+                    try {
+                        imageReader.setInput(imageInputStream, true, true);
+                        int width = imageReader.getWidth(0);
+                        int height = imageReader.getHeight(0);
+                        BufferedImage bufferedImage = null;
+                        if (subsampling != null) {
+                            ImageReadParam readParam = imageReader.getDefaultReadParam();
+                            readParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                            bufferedImage = imageReader.read(0, readParam);
+                        }
+                        return new ProcessingImage(true, fileName, fileSize, width, height, mimeType, ext, fileHash, bufferedImage);
+                    } finally {
+                        imageReader.dispose();
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isImage(String mimeType) {
+        return mimeType != null && mimeType.startsWith("image/");
+    }
+}
@@ -0,0 +1,65 @@
+package com.hoquangnam45.cdc.image.app.event.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Bounds the heap used by decoded images and thumbnails across all in-flight messages. Messages are admitted in
+// arrival order once their estimated working set fits, the others wait on the subscriber threads, which in turn
+// makes Pub/Sub flow control keep the rest of the messages queued upstream.
+@Component
+public class ImageMemoryBudget {
+    private static final String WAIT_TIMER_NAME = "image.memory.budget.wait";
+    private static final String QUEUE_DEPTH_GAUGE_NAME = "image.memory.budget.queue.depth";
+    private static final String ADMITTED_BYTES_GAUGE_NAME = "image.memory.budget.admitted";
+    private static final long DEFAULT_HEAP_PERCENT = 40;
+    // Permits are KiB so that budgets over 2GiB still fit in a semaphore
+    private static final int PERMIT_BYTES = 1024;
+
+    private final int totalPermits;
+    private final Semaphore semaphore;
+    private final Timer waitTimer;
+
+    public ImageMemoryBudget(@Value("${app.event.memory-budget-bytes}") long memoryBudgetBytes, MeterRegistry meterRegistry) {
+        long budgetBytes = memoryBudgetBytes > 0 ? memoryBudgetBytes : Runtime.getRuntime().maxMemory() / 100 * DEFAULT_HEAP_PERCENT;
+        this.totalPermits = (int) Math.min(Integer.MAX_VALUE, budgetBytes / PERMIT_BYTES);
+        this.semaphore = new Semaphore(totalPermits, true);
+        this.waitTimer = meterRegistry.timer(WAIT_TIMER_NAME);
+        Gauge.builder(QUEUE_DEPTH_GAUGE_NAME, semaphore, Semaphore::getQueueLength).register(meterRegistry);
+        Gauge.builder(ADMITTED_BYTES_GAUGE_NAME, semaphore, s -> (double) (totalPermits - s.availablePermits()) * PERMIT_BYTES).baseUnit("bytes").register(meterRegistry);
+    }
+
+    public Reservation newReservation() {
+        return new Reservation();
+    }
+
+    // Owned by the thread processing a message, everything acquired through it is released on close
+    public class Reservation implements AutoCloseable {
+        private int acquiredPermits = 0;
+
+        public void acquire(long bytes) throws InterruptedException {
+            // A single message is never reserved more than the whole budget, otherwise it could never be admitted
+            int permits = (int) Math.min(totalPermits - acquiredPermits, (bytes + PERMIT_BYTES - 1) / PERMIT_BYTES);
+            if (permits <= 0) {
+                return;
+            }
+            long waitStartedAt = System.nanoTime();
+            semaphore.acquire(permits);
+            waitTimer.record(System.nanoTime() - waitStartedAt, TimeUnit.NANOSECONDS);
+            acquiredPermits += permits;
+        }
+
+        @Override
+        public void close() {
+            if (acquiredPermits > 0) {
+                semaphore.release(acquiredPermits);
+                acquiredPermits = 0;
+            }
+        }
+    }
+}
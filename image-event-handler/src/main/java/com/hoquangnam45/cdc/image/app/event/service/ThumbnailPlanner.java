@@ -0,0 +1,53 @@
+package com.hoquangnam45.cdc.image.app.event.service;
+
+import com.hoquangnam45.cdc.image.app.common.model.ProcessJobConfigurationMdl;
+import com.hoquangnam45.cdc.image.app.event.model.ThumbnailPlanStep;
+import com.hoquangnam45.cdc.image.app.event.resize.ResizeQuality;
+import com.hoquangnam45.cdc.image.app.event.util.ImageSizeUtil;
+import org.springframework.stereotype.Component;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+@Component
+public class ThumbnailPlanner {
+    // Orders the configurations from the largest target to the smallest and lets every thumbnail be resized from the
+    // smallest already planned thumbnail that still covers it (e.g. 64px from 256px, 256px from 1024px) instead of
+    // from the original. A thumbnail only feeds another one with the same or a lower resize quality.
+    public List<ThumbnailPlanStep> plan(List<ProcessJobConfigurationMdl> processJobConfigurations, int width, int height) {
+        List<ThumbnailPlanStep> resolvedSteps = new ArrayList<>();
+        List<ThumbnailPlanStep> unresolvedSteps = new ArrayList<>();
+        for (ProcessJobConfigurationMdl processJobConfiguration : processJobConfigurations) {
+            try {
+                Dimension targetSize = ImageSizeUtil.resolveTargetSize(processJobConfiguration, width, height);
+                resolvedSteps.add(new ThumbnailPlanStep(processJobConfiguration, targetSize.width, targetSize.height, ThumbnailPlanStep.ORIGINAL_SOURCE));
+            } catch (IllegalStateException e) {
+                unresolvedSteps.add(new ThumbnailPlanStep(processJobConfiguration, null, null, ThumbnailPlanStep.ORIGINAL_SOURCE));
+            }
+        }
+        resolvedSteps.sort(Comparator.comparingLong(ThumbnailPlanStep::area).reversed());
+
+        List<ThumbnailPlanStep> plan = new ArrayList<>(processJobConfigurations.size());
+        for (ThumbnailPlanStep step : resolvedSteps) {
+            int sourceIndex = ThumbnailPlanStep.ORIGINAL_SOURCE;
+            for (int i = 0; i < plan.size(); i++) {
+                ThumbnailPlanStep candidate = plan.get(i);
+                if (canBeSourceOf(candidate, step) && (sourceIndex == ThumbnailPlanStep.ORIGINAL_SOURCE || candidate.area() < plan.get(sourceIndex).area())) {
+                    sourceIndex = i;
+                }
+            }
+            plan.add(new ThumbnailPlanStep(step.configuration(), step.width(), step.height(), sourceIndex));
+        }
+        plan.addAll(unresolvedSteps);
+        return plan;
+    }
+
+    private static boolean canBeSourceOf(ThumbnailPlanStep source, ThumbnailPlanStep target) {
+        return source.width() >= target.width()
+                && source.height() >= target.height()
+                && source.area() > target.area()
+                && ResizeQuality.fromQuality(source.configuration().getQuality()).ordinal() >= ResizeQuality.fromQuality(target.configuration().getQuality()).ordinal();
+    }
+}
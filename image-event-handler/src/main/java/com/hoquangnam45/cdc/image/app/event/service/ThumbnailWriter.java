@@ -0,0 +1,125 @@
+package com.hoquangnam45.cdc.image.app.event.service;
+
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.BlobWriteSession;
+import com.google.cloud.storage.BlobWriteSessionConfigs;
+import com.google.cloud.storage.Storage;
+import com.hoquangnam45.cdc.image.app.event.model.ThumbnailWriteResult;
+import com.hoquangnam45.cdc.image.app.event.util.ChannelImageOutputStream;
+import com.hoquangnam45.cdc.image.app.event.util.ChannelOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+
+// Encodes thumbnails straight into a GCS upload channel instead of going through a byte array, computing the size
+// and md5 of the object while writing so the result doesn't need another metadata request. Uploads go through a blob
+// write session, which reports the stored object once the upload is finalized.
+@Component
+public class ThumbnailWriter {
+    private final Storage writeSessionClient;
+    private final BlockingQueue<ByteBuffer> bufferPool;
+
+    public ThumbnailWriter(Storage storageClient, @Value("${app.thumbnail.upload.chunk-size}") int chunkSize, @Value("${app.thumbnail.upload.buffer-pool-size}") int bufferPoolSize) {
+        // The chunk size of a write session is part of the client options, not of the single write
+        this.writeSessionClient = storageClient.getOptions().toBuilder()
+                .setBlobWriteSessionConfig(BlobWriteSessionConfigs.getDefault().withChunkSize(chunkSize))
+                .build()
+                .getService();
+        int poolSize = bufferPoolSize > 0 ? bufferPoolSize : Runtime.getRuntime().availableProcessors();
+        this.bufferPool = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            bufferPool.add(ByteBuffer.allocateDirect(chunkSize));
+        }
+    }
+
+    public ThumbnailWriteResult write(BlobInfo blobInfo, BufferedImage image, String formatName) throws IOException, InterruptedException {
+        ImageWriter imageWriter = getImageWriter(formatName);
+        BufferedImage encodableImage = toEncodableImage(imageWriter, image, formatName);
+        MessageDigest md5 = newMd5Digest();
+        ByteBuffer buffer = bufferPool.take();
+        try {
+            BlobWriteSession writeSession = writeSessionClient.blobWriteSession(blobInfo);
+            WritableByteChannel writeChannel = writeSession.open();
+            ChannelOutputStream channelOutputStream = new ChannelOutputStream(writeChannel, buffer, md5);
+            try {
+                try (ImageOutputStream imageOutputStream = new ChannelImageOutputStream(channelOutputStream)) {
+                    imageWriter.setOutput(imageOutputStream);
+                    imageWriter.write(encodableImage);
+                } finally {
+                    imageWriter.dispose();
+                }
+                channelOutputStream.close();
+            } catch (Throwable e) {
+                // Closing the channel is what finalizes the object, so a failed encode abandons it unclosed instead: the
+                // channel and its chunk buffer are dropped here and GCS expires the unfinished upload, no object is created
+                throw e;
+            }
+            writeChannel.close();
+            BlobInfo storedBlob = getStoredBlob(writeSession);
+            return new ThumbnailWriteResult(blobInfo.getBlobId(), channelOutputStream.getSize(), Base64.getEncoder().encodeToString(md5.digest()), encodableImage.getWidth(), encodableImage.getHeight(), storedBlob.getCreateTimeOffsetDateTime().toInstant());
+        } finally {
+            bufferPool.add(buffer);
+        }
+    }
+
+    // Already completed once the channel is closed
+    private static BlobInfo getStoredBlob(BlobWriteSession writeSession) throws IOException, InterruptedException {
+        try {
+            return writeSession.getResult().get();
+        } catch (ExecutionException e) {
+            throw new IOException("Failed finalizing upload", e.getCause());
+        }
+    }
+
+    private static ImageWriter getImageWriter(String formatName) {
+        Iterator<ImageWriter> imageWriters = ImageIO.getImageWritersByFormatName(formatName);
+        if (!imageWriters.hasNext()) {
+            throw new IllegalStateException("No image writer available for format " + formatName);
+        }
+        return imageWriters.next();
+    }
+
+    // Formats without alpha (e.g. jpeg) can't encode ARGB images, flatten them on a white background first
+    private static BufferedImage toEncodableImage(ImageWriter imageWriter, BufferedImage image, String formatName) {
+        if (imageWriter.getOriginatingProvider().canEncodeImage(image)) {
+            return image;
+        }
+        BufferedImage flattenedImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = flattenedImage.createGraphics();
+        try {
+            g2d.setColor(Color.WHITE);
+            g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g2d.drawImage(image, 0, 0, null);
+        } finally {
+            g2d.dispose();
+        }
+        if (!imageWriter.getOriginatingProvider().canEncodeImage(flattenedImage)) {
+            throw new IllegalStateException("Image can't be encoded as " + formatName);
+        }
+        return flattenedImage;
+    }
+
+    private static MessageDigest newMd5Digest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.hoquangnam45.cdc.image.app.event.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hoquangnam45.cdc.image.app.event.model.UploadedImageSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+// md5 -> uploaded image (id, status, configurations with their job status and generated thumbnail), filled from the
+// event state query. Hashes without an uploaded image are never cached, so a new upload is visible to the next lookup.
+// The handler invalidates the hash after every write it makes for that content (uploaded image, job claim and update,
+// generated image). Writes made by other instances show up once the entry expires, in the meantime a configuration
+// cached as pending is still guarded by claimProcessingJob.
+@Component
+public class UploadedImageCache {
+    private static final String CACHE_NAME = "uploadedImage";
+
+    private final Cache<String, UploadedImageSummary> cache;
+
+    public UploadedImageCache(MeterRegistry meterRegistry, @Value("${app.cache.uploaded-image.maximum-size}") long maximumSize, @Value("${app.cache.uploaded-image.expire-after-write}") Duration expireAfterWrite) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    public UploadedImageSummary getIfPresent(String md5Hash) {
+        return cache.getIfPresent(md5Hash);
+    }
+
+    public void put(UploadedImageSummary uploadedImageSummary) {
+        cache.put(uploadedImageSummary.fileHash(), uploadedImageSummary);
+    }
+
+    public void invalidate(String md5Hash) {
+        cache.invalidate(md5Hash);
+    }
+}
@@ -0,0 +1,106 @@
+package com.hoquangnam45.cdc.image.app.event.util;
+
+import javax.imageio.stream.ImageOutputStreamImpl;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Write-through ImageOutputStream that only keeps the tail of the output in memory instead of all of it like
+// MemoryCacheImageOutputStream. Bytes are handed to the target once the writer flushed past them, or once they are more
+// than RETAINED_BYTES behind the end. The PNG writer seeks back at most to the start of the current chunk (IDAT chunks are
+// 32KiB) and flushes after every chunk, the JPEG writer never seeks, so neither reaches into bytes that were already
+// written out. A writer that does is failed with an IOException rather than producing a corrupt object.
+public class ChannelImageOutputStream extends ImageOutputStreamImpl {
+    private static final int RETAINED_BYTES = 64 * 1024;
+
+    private final OutputStream target;
+    // Output not handed to the target yet, covers the stream positions [pendingStart, pendingStart + pendingLength)
+    private byte[] pending = new byte[2 * RETAINED_BYTES];
+    private long pendingStart = 0;
+    private int pendingLength = 0;
+
+    public ChannelImageOutputStream(OutputStream target) {
+        this.target = target;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        flushBits();
+        int index = reserve(1);
+        pending[index] = (byte) b;
+        advance(1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        flushBits();
+        int index = reserve(length);
+        System.arraycopy(bytes, offset, pending, index, length);
+        advance(length);
+    }
+
+    @Override
+    public int read() throws IOException {
+        throw new IOException("Reading back the output is not supported");
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        throw new IOException("Reading back the output is not supported");
+    }
+
+    @Override
+    public long length() {
+        return pendingStart + pendingLength;
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+        if (pos < pendingStart || pos > length()) {
+            throw new IOException("Can't seek to " + pos + ", only [" + pendingStart + ", " + length() + "] is still in memory");
+        }
+        super.seek(pos);
+    }
+
+    @Override
+    public void flushBefore(long pos) throws IOException {
+        super.flushBefore(pos);
+        emit((int) (pos - pendingStart));
+    }
+
+    @Override
+    public void close() throws IOException {
+        emit(pendingLength);
+        target.flush();
+        super.close();
+    }
+
+    // Index in pending of the current position, with room for length more bytes
+    private int reserve(int length) {
+        int index = (int) (streamPos - pendingStart);
+        if (index + length > pending.length) {
+            byte[] grown = new byte[Math.max(pending.length * 2, index + length)];
+            System.arraycopy(pending, 0, grown, 0, pendingLength);
+            pending = grown;
+        }
+        return index;
+    }
+
+    private void advance(int length) throws IOException {
+        streamPos += length;
+        pendingLength = Math.max(pendingLength, (int) (streamPos - pendingStart));
+        // Emitted in bulk so the retained tail is only shifted once per RETAINED_BYTES written
+        if (pendingLength >= 2 * RETAINED_BYTES) {
+            emit(Math.min(pendingLength - RETAINED_BYTES, (int) (streamPos - pendingStart)));
+        }
+    }
+
+    private void emit(int count) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+        target.write(pending, 0, count);
+        System.arraycopy(pending, count, pending, 0, pendingLength - count);
+        pendingStart += count;
+        pendingLength -= count;
+    }
+}
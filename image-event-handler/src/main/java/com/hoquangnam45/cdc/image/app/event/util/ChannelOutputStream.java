@@ -0,0 +1,74 @@
+package com.hoquangnam45.cdc.image.app.event.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+
+// Buffers writes into the given (direct) ByteBuffer and hands it to the channel when full, counting the bytes on the way
+// and digesting each buffer as a whole when it is drained. Closing the stream flushes the buffer but leaves the channel open.
+public class ChannelOutputStream extends OutputStream {
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final MessageDigest digest;
+    private long size = 0;
+    private boolean closed = false;
+
+    public ChannelOutputStream(WritableByteChannel channel, ByteBuffer buffer, MessageDigest digest) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.digest = digest;
+        this.buffer.clear();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put((byte) b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        size += length;
+        while (length > 0) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            int written = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, written);
+            offset += written;
+            length -= written;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        drain();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        digest.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,77 @@
+package com.hoquangnam45.cdc.image.app.event.util;
+
+import com.hoquangnam45.cdc.image.app.common.model.ProcessJobConfigurationMdl;
+import com.hoquangnam45.cdc.image.app.event.resize.ResizeQuality;
+
+import java.awt.Dimension;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+public class ImageSizeUtil {
+    private static final long BYTES_PER_PIXEL = 4;
+
+    public static Dimension resolveTargetSize(ProcessJobConfigurationMdl processJobConfiguration, int width, int height) {
+        Integer newWidth = processJobConfiguration.getWidth();
+        Integer newHeight = processJobConfiguration.getHeight();
+        if (newHeight != null && newWidth == null && processJobConfiguration.getKeepRatio()) {
+            newWidth = BigDecimal.valueOf(newHeight).divide(BigDecimal.valueOf(height), 12, RoundingMode.HALF_EVEN).multiply(BigDecimal.valueOf(width)).intValue();
+        } else if (newHeight == null && newWidth != null && processJobConfiguration.getKeepRatio()) {
+            newHeight = BigDecimal.valueOf(newWidth).divide(BigDecimal.valueOf(width), 12, RoundingMode.HALF_EVEN).multiply(BigDecimal.valueOf(height)).intValue();
+        } else if (newHeight == null && newWidth == null && processJobConfiguration.getScale() != null) {
+            newHeight = BigDecimal.valueOf(height).multiply(processJobConfiguration.getScale()).intValue();
+            newWidth = BigDecimal.valueOf(width).multiply(processJobConfiguration.getScale()).intValue();
+        } else {
+            throw new IllegalStateException("Can't determine width / height for this configuration " + processJobConfiguration.getId());
+        }
+        return new Dimension(newWidth, newHeight);
+    }
+
+    // Coarsest integer subsampling that still decodes at least as many pixels as the largest target needs
+    public static int resolveSubsampling(List<ProcessJobConfigurationMdl> processJobConfigurations, int width, int height) {
+        int maxTargetWidth = 0;
+        int maxTargetHeight = 0;
+        for (ProcessJobConfigurationMdl processJobConfiguration : processJobConfigurations) {
+            Dimension targetSize;
+            try {
+                targetSize = resolveTargetSize(processJobConfiguration, width, height);
+            } catch (IllegalStateException e) {
+                // Invalid configurations fail on their own job, they shouldn't limit the others
+                continue;
+            }
+            maxTargetWidth = Math.max(maxTargetWidth, targetSize.width);
+            maxTargetHeight = Math.max(maxTargetHeight, targetSize.height);
+        }
+        if (maxTargetWidth <= 0 || maxTargetHeight <= 0) {
+            return 1;
+        }
+        return Math.max(1, Math.min(width / maxTargetWidth, height / maxTargetHeight));
+    }
+
+    // Rough upper bound of the heap needed to generate the thumbnails of an image: the subsampled decode plus every
+    // thumbnail twice (the result and the intermediate images of the resize), all at 4 bytes per pixel. Area averaging
+    // may also repack the source to int pixels, its own float rows are small enough to be ignored.
+    public static long estimateWorkingSetBytes(List<ProcessJobConfigurationMdl> processJobConfigurations, int width, int height, int subsampling) {
+        int decodedWidth = Math.ceilDiv(width, subsampling);
+        int decodedHeight = Math.ceilDiv(height, subsampling);
+        long decodedPixels = (long) decodedWidth * decodedHeight;
+        long thumbnailPixels = 0;
+        boolean repacksSource = false;
+        for (ProcessJobConfigurationMdl processJobConfiguration : processJobConfigurations) {
+            Dimension targetSize;
+            try {
+                targetSize = resolveTargetSize(processJobConfiguration, width, height);
+            } catch (IllegalStateException e) {
+                // Fails before allocating anything
+                continue;
+            }
+            thumbnailPixels += (long) targetSize.width * targetSize.height;
+            if (ResizeQuality.fromQuality(processJobConfiguration.getQuality()) == ResizeQuality.AREA_AVERAGING
+                    && targetSize.width < decodedWidth && targetSize.height < decodedHeight) {
+                repacksSource = true;
+            }
+        }
+        long sourceCopyPixels = repacksSource ? decodedPixels : 0;
+        return (decodedPixels + sourceCopyPixels + 2 * thumbnailPixels) * BYTES_PER_PIXEL;
+    }
+}
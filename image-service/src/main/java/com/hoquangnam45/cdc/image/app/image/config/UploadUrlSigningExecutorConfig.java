@@ -0,0 +1,35 @@
+package com.hoquangnam45.cdc.image.app.image.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class UploadUrlSigningExecutorConfig {
+    // V4 signing is an RSA signature per url, so the pool is sized to the available cores by default. A full queue rejects
+    // the task (surfaced as 429) so a burst of bulk uploads can't starve the rest of the service.
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService uploadUrlSigningExecutor(MeterRegistry meterRegistry, @Value("${app.image.upload.signing.parallelism}") int parallelism, @Value("${app.image.upload.signing.queue-capacity}") int queueCapacity) {
+        int poolSize = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("upload-url-signing-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        Gauge.builder("image.upload.signing.queue.depth", executor, e -> e.getQueue().size())
+                .description("Upload url signing tasks waiting for a worker")
+                .register(meterRegistry);
+        return executor;
+    }
+}
@@ -3,13 +3,19 @@ package com.hoquangnam45.cdc.image.app.image.controller;
 import com.hoquangnam45.cdc.image.app.common.model.JwtUser;
 import com.hoquangnam45.cdc.image.app.common.model.ServiceResponse;
 import com.hoquangnam45.cdc.image.app.common.model.ProcessJobConfigurationMdl;
+import com.hoquangnam45.cdc.image.app.image.model.ResumableUploadResponse;
 import com.hoquangnam45.cdc.image.app.image.model.ThumbnailImageResponse;
 import com.hoquangnam45.cdc.image.app.image.model.UploadImageResponse;
-import com.hoquangnam45.cdc.image.app.image.model.UserUploadedImageResponse;
+import com.hoquangnam45.cdc.image.app.image.model.UploadPrecheckRequest;
+import com.hoquangnam45.cdc.image.app.image.model.UserUploadedImagePageResponse;
 import com.hoquangnam45.cdc.image.app.image.service.ImageService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.RequestEntity;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -19,6 +25,8 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
@@ -36,13 +44,51 @@ public class ImageController {
                 .map(ResponseEntity::ok);
     }
 
-    @GetMapping("/list")
-    public Mono<ResponseEntity<ServiceResponse<List<UserUploadedImageResponse>>>> listImages(@AuthenticationPrincipal JwtUser jwtUser) {
-        return imageService.listUploadedUserImages(jwtUser.id())
+    // POST /upload?precheck with (fileName, md5, size) per file, duplicates come back as UPLOADED without an upload url
+    @PostMapping(value = "/upload", params = "precheck")
+    public Mono<ResponseEntity<ServiceResponse<List<UploadImageResponse>>>> precheckUploadImage(@AuthenticationPrincipal JwtUser jwtUser, @RequestBody List<UploadPrecheckRequest> requests) {
+        return imageService.precheckUploads(jwtUser.id(), requests)
+                .map(ServiceResponse::success)
+                .map(ResponseEntity::ok);
+    }
+
+    @PostMapping("/{id}/upload/resumable")
+    public Mono<ResponseEntity<ServiceResponse<ResumableUploadResponse>>> createResumableUpload(@AuthenticationPrincipal JwtUser jwtUser, @PathVariable("id") String imageId) {
+        return imageService.createResumableUploadUrl(jwtUser.id(), imageId)
                 .map(ServiceResponse::success)
                 .map(ResponseEntity::ok);
     }
 
+    @GetMapping("/list")
+    public Mono<ResponseEntity<ServiceResponse<UserUploadedImagePageResponse>>> listImages(
+            @AuthenticationPrincipal JwtUser jwtUser,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "since", required = false) Long since,
+            ServerWebExchange exchange) {
+        // The listing embeds signed urls, so it may only be reused by the user's own client after revalidation
+        CacheControl cacheControl = CacheControl.noCache().cachePrivate();
+        return imageService.getUserImageListETag(jwtUser.id())
+                .flatMap(eTag -> {
+                    if (exchange.checkNotModified(eTag)) {
+                        return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                                .eTag(eTag)
+                                .cacheControl(cacheControl)
+                                .<ServiceResponse<UserUploadedImagePageResponse>>build());
+                    }
+                    return imageService.listUploadedUserImages(jwtUser.id(), cursor, limit, since)
+                            .map(page -> ResponseEntity.ok()
+                                    .eTag(eTag)
+                                    .cacheControl(cacheControl)
+                                    .body(ServiceResponse.success(page)));
+                });
+    }
+
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamImageEvents(@AuthenticationPrincipal JwtUser jwtUser) {
+        return imageService.streamImageStatusEvents(jwtUser.id());
+    }
+
     @GetMapping("/thumbnail/configuration/list")
     public Mono<RequestEntity<ServiceResponse<List<ProcessJobConfigurationMdl>>>> getThumbnailConfigurations() {
         return Mono.empty();
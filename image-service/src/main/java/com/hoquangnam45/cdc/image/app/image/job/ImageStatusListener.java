@@ -0,0 +1,134 @@
+package com.hoquangnam45.cdc.image.app.image.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hoquangnam45.cdc.image.app.common.constant.CommonConstant;
+import com.hoquangnam45.cdc.image.app.image.model.ImageStatusNotification;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Properties;
+
+// Holds one connection that LISTENs on the image status channel and republishes every notification to the SSE
+// subscribers of this instance. The connection is opened with the pool's settings but outside of it, it is held for the
+// lifetime of the listener and reopened with an increasing delay when it drops. Delivery is best effort: notifications sent while reconnecting, or that a slow subscriber
+// can not keep up with, are dropped, clients resync by reloading the list when their stream (re)opens.
+@Component
+@Slf4j
+public class ImageStatusListener implements SmartLifecycle {
+    private final HikariDataSource dataSource;
+    private final ObjectMapper objectMapper;
+    private final Duration pollTimeout;
+    private final Duration reconnectDelay;
+    private final Duration maxReconnectDelay;
+    private final Sinks.Many<ImageStatusNotification> sink = Sinks.many().multicast().directBestEffort();
+
+    private volatile boolean running = false;
+    private Thread listenerThread;
+
+    public ImageStatusListener(HikariDataSource dataSource, ObjectMapper objectMapper, @Value("${app.image.events.poll-timeout}") Duration pollTimeout, @Value("${app.image.events.reconnect-delay}") Duration reconnectDelay, @Value("${app.image.events.max-reconnect-delay}") Duration maxReconnectDelay) {
+        this.dataSource = dataSource;
+        this.objectMapper = objectMapper;
+        this.pollTimeout = pollTimeout;
+        this.reconnectDelay = reconnectDelay;
+        this.maxReconnectDelay = maxReconnectDelay;
+    }
+
+    public Flux<ImageStatusNotification> notifications() {
+        return sink.asFlux();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        listenerThread = new Thread(this::listen, "image-status-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            listenerThread.join(pollTimeout.toMillis() * 2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sink.tryEmitComplete();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listen() {
+        Duration delay = reconnectDelay;
+        while (running) {
+            try (Connection connection = openConnection()) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CommonConstant.IMAGE_STATUS_CHANNEL);
+                }
+                log.info("Listening for image status notifications [channel = {}]", CommonConstant.IMAGE_STATUS_CHANNEL);
+                delay = reconnectDelay;
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications((int) pollTimeout.toMillis());
+                    if (notifications == null || notifications.length == 0) {
+                        // Nothing arrived, a connection dropped without a reset would otherwise wait here forever
+                        if (!connection.isValid((int) Math.max(1, pollTimeout.toSeconds()))) {
+                            throw new SQLException("Image status listener connection is no longer valid");
+                        }
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        publish(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                log.error("ERROR: Image status listener connection failed, reconnecting in {}. Reason: {}", delay, e.getMessage(), e);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                Duration nextDelay = delay.multipliedBy(2);
+                delay = nextDelay.compareTo(maxReconnectDelay) < 0 ? nextDelay : maxReconnectDelay;
+            }
+        }
+    }
+
+    // Not borrowed from the pool: it would permanently shrink the pool shared with the request path, and the pool's
+    // max lifetime would retire it under the listener
+    private Connection openConnection() throws SQLException {
+        Properties properties = new Properties();
+        properties.putAll(dataSource.getDataSourceProperties());
+        if (dataSource.getUsername() != null) {
+            properties.setProperty("user", dataSource.getUsername());
+        }
+        if (dataSource.getPassword() != null) {
+            properties.setProperty("password", dataSource.getPassword());
+        }
+        return DriverManager.getConnection(dataSource.getJdbcUrl(), properties);
+    }
+
+    private void publish(String payload) {
+        try {
+            sink.tryEmitNext(objectMapper.readValue(payload, ImageStatusNotification.class));
+        } catch (Exception e) {
+            log.error("ERROR: Failed to parse image status notification [payload = {}]. Reason: {}", payload, e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.hoquangnam45.cdc.image.app.image.model;
+
+import com.hoquangnam45.cdc.image.app.common.enums.ImageStatus;
+import com.hoquangnam45.cdc.image.app.common.enums.JobStatus;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// Payload of the image_status NOTIFY sent by the event handler. type is IMAGE for user image status changes (status and
+// the uploaded image columns are set) and THUMBNAIL for processing job changes (jobStatus, configurationId and, once
+// generated, the generated image columns are set).
+public record ImageStatusNotification(
+        String type,
+        UUID userId,
+        UUID userImageId,
+        ImageStatus status,
+        JobStatus jobStatus,
+        UUID configurationId,
+        UUID generatedImageId,
+        Integer width,
+        Integer height,
+        Integer fileSize,
+        String filePath,
+        String fileType,
+        String fileHash,
+        LocalDateTime createdAt) {
+    public static final String TYPE_IMAGE = "IMAGE";
+    public static final String TYPE_THUMBNAIL = "THUMBNAIL";
+}
@@ -0,0 +1,7 @@
+package com.hoquangnam45.cdc.image.app.image.model;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public record ResumableUploadResponse(UUID id, String fileName, Instant expiredAt, String uploadUrl) {
+}
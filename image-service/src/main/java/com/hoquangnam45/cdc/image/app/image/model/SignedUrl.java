@@ -0,0 +1,6 @@
+package com.hoquangnam45.cdc.image.app.image.model;
+
+import java.time.Instant;
+
+public record SignedUrl(String url, Instant expiresAt) {
+}
@@ -1,7 +1,9 @@
 package com.hoquangnam45.cdc.image.app.image.model;
 
+import com.hoquangnam45.cdc.image.app.common.enums.ImageStatus;
+
 import java.time.Instant;
 import java.util.UUID;
 
-public record UploadImageResponse(UUID id, String fileName, Instant createdAt, Instant expiredAt, String uploadUrl) {
+public record UploadImageResponse(UUID id, String fileName, Instant createdAt, Instant expiredAt, String uploadUrl, ImageStatus status) {
 }
@@ -0,0 +1,5 @@
+package com.hoquangnam45.cdc.image.app.image.model;
+
+// md5 is the base64 encoded MD5 digest of the content, the same form GCS reports for an object
+public record UploadPrecheckRequest(String fileName, String md5, Long size) {
+}
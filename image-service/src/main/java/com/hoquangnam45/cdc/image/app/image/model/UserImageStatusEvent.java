@@ -0,0 +1,16 @@
+package com.hoquangnam45.cdc.image.app.image.model;
+
+import com.hoquangnam45.cdc.image.app.common.enums.ImageStatus;
+
+import java.util.UUID;
+
+public record UserImageStatusEvent(
+        UUID id,
+        ImageStatus status,
+        Integer width,
+        Integer height,
+        Integer fileSize,
+        String downloadUrl,
+        String fileType,
+        String fileHash) {
+}
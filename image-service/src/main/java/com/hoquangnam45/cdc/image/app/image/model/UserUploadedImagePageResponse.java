@@ -0,0 +1,9 @@
+package com.hoquangnam45.cdc.image.app.image.model;
+
+import java.util.List;
+
+public record UserUploadedImagePageResponse(
+        List<UserUploadedImageResponse> items,
+        String nextCursor,
+        long version) {
+}
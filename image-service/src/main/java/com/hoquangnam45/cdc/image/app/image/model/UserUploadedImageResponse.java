@@ -21,5 +21,6 @@ public record UserUploadedImageResponse(
         Instant createdAt,
         Instant updatedAt,
         Instant expiredAt,
+        Instant deletedAt,
         List<UserGeneratedImageResponse> thumbnails) {
 }
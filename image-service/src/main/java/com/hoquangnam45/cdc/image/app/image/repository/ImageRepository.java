@@ -1,23 +1,35 @@
 package com.hoquangnam45.cdc.image.app.image.repository;
 
+import com.hoquangnam45.cdc.image.app.common.model.UploadedImageMdl;
 import com.hoquangnam45.cdc.image.app.common.model.UserGeneratedImageMdl;
 import com.hoquangnam45.cdc.image.app.common.model.UserImageMdl;
 import com.hoquangnam45.cdc.image.app.common.model.UserUploadedImageMdl;
+import com.hoquangnam45.cdc.image.app.image.model.UserImageCursor;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
 @Mapper
 @Repository
 public interface ImageRepository {
-    List<UserUploadedImageMdl> getUserUploadedImages(@Param("userId") UUID userId);
+    List<UserUploadedImageMdl> getUserUploadedImagePage(@Param("userId") UUID userId, @Param("cursor") UserImageCursor cursor, @Param("limit") int limit);
 
-    List<UserGeneratedImageMdl> getUserGeneratedImages(@Param("userId") UUID userId);
+    List<UserUploadedImageMdl> getUserUploadedImagesChangedSince(@Param("userId") UUID userId, @Param("since") long since, @Param("limit") int limit);
 
-    void saveUserImage(UserImageMdl request);
+    List<UploadedImageMdl> findUploadedImagesByHash(@Param("fileHashes") Collection<String> fileHashes, @Param("ownerId") UUID ownerId);
 
-    boolean deleteUserImage(@Param("userId") UUID userId, @Param("imageId") UUID imageId);
+    Long getUserImageVersion(@Param("userId") UUID userId);
+
+    List<UserGeneratedImageMdl> getUserGeneratedImages(@Param("userId") UUID userId, @Param("imageIds") Collection<UUID> imageIds);
+
+    void saveUserImages(@Param("userImages") List<UserImageMdl> userImages);
+
+    UserImageMdl extendPendingUserImage(@Param("userId") UUID userId, @Param("imageId") UUID imageId, @Param("expiredAt") Instant expiredAt, @Param("now") Instant now);
+
+    boolean deleteUserImage(@Param("userId") UUID userId, @Param("imageId") UUID imageId, @Param("deletedAt") Instant deletedAt);
 }
@@ -1,62 +1,194 @@
 package com.hoquangnam45.cdc.image.app.image.service;
 
+import com.google.cloud.storage.BlobId;
 import com.google.cloud.storage.BlobInfo;
 import com.google.cloud.storage.HttpMethod;
 import com.google.cloud.storage.Storage;
 import com.hoquangnam45.cdc.image.app.common.constant.CommonConstant;
+import com.hoquangnam45.cdc.image.app.common.constant.CommonResponseCode;
 import com.hoquangnam45.cdc.image.app.common.enums.ImageStatus;
+import com.hoquangnam45.cdc.image.app.common.exception.ServiceException;
+import com.hoquangnam45.cdc.image.app.common.model.UploadedImageMdl;
 import com.hoquangnam45.cdc.image.app.common.model.UserImageMdl;
+import com.hoquangnam45.cdc.image.app.image.job.ImageStatusListener;
+import com.hoquangnam45.cdc.image.app.image.model.ImageStatusNotification;
+import com.hoquangnam45.cdc.image.app.image.model.ResumableUploadResponse;
+import com.hoquangnam45.cdc.image.app.image.model.SignedUrl;
 import com.hoquangnam45.cdc.image.app.image.model.UploadImageResponse;
+import com.hoquangnam45.cdc.image.app.image.model.UploadPrecheckRequest;
+import com.hoquangnam45.cdc.image.app.image.model.UserImageCursor;
+import com.hoquangnam45.cdc.image.app.image.model.UserImageStatusEvent;
 import com.hoquangnam45.cdc.image.app.common.model.UserGeneratedImageMdl;
 import com.hoquangnam45.cdc.image.app.image.model.UserGeneratedImageResponse;
 import com.hoquangnam45.cdc.image.app.common.model.UserUploadedImageMdl;
+import com.hoquangnam45.cdc.image.app.image.model.UserUploadedImagePageResponse;
 import com.hoquangnam45.cdc.image.app.image.model.UserUploadedImageResponse;
 import com.hoquangnam45.cdc.image.app.image.repository.ImageRepository;
+import com.hoquangnam45.cdc.image.app.image.util.CursorUtil;
 import com.hoquangnam45.cdc.image.app.image.util.GcsUtil;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.net.URL;
+import java.time.DateTimeException;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 @Service
 public class ImageService {
+    private static final Duration DOWNLOAD_URL_DURATION = Duration.ofDays(1);
+
     private final ImageRepository imageRepository;
     private final Storage storage;
+    private final SignedUrlCache signedUrlCache;
+    private final Scheduler blockingScheduler;
+    private final ImageStatusListener imageStatusListener;
+    private final UploadRateLimiter uploadRateLimiter;
+    private final Scheduler uploadUrlSigningScheduler;
+    private final int uploadUrlSigningParallelism;
+    private final int maxFilesPerUploadRequest;
+    private final Duration resumableUploadDuration;
+    private final boolean precheckGlobalScope;
+    private final Duration eventHeartbeatInterval;
     private final String bucketName;
     private final Duration presignedUrlDuration;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final Duration listETagMaxAge;
 
     public ImageService(
-            ImageRepository imageRepository, Storage storage,
+            ImageRepository imageRepository, Storage storage, SignedUrlCache signedUrlCache, Scheduler blockingScheduler, ImageStatusListener imageStatusListener,
+            UploadRateLimiter uploadRateLimiter,
+            @Qualifier("uploadUrlSigningExecutor") ExecutorService uploadUrlSigningExecutor,
+            @Value("${app.image.upload.max-files-per-request}") int maxFilesPerUploadRequest,
+            @Value("${app.image.upload.resumable.duration}") Duration resumableUploadDuration,
+            @Value("${app.image.upload.precheck.scope}") String precheckScope,
             @Value("${gcp.storage.bucket-name}") String bucketName,
-            @Value("${gcp.storage.presigned-url.duration-minute}") long presignedUrlDurationMinutes) {
+            @Value("${gcp.storage.presigned-url.duration-minute}") long presignedUrlDurationMinutes,
+            @Value("${app.image.list.default-page-size}") int defaultPageSize,
+            @Value("${app.image.list.max-page-size}") int maxPageSize,
+            @Value("${app.image.list.etag-max-age}") Duration listETagMaxAge,
+            @Value("${app.image.events.heartbeat-interval}") Duration eventHeartbeatInterval) {
         this.imageRepository = imageRepository;
         this.storage = storage;
+        this.signedUrlCache = signedUrlCache;
+        this.blockingScheduler = blockingScheduler;
+        this.imageStatusListener = imageStatusListener;
+        this.uploadRateLimiter = uploadRateLimiter;
+        this.uploadUrlSigningScheduler = Schedulers.fromExecutorService(uploadUrlSigningExecutor, "upload-url-signing");
+        // Never queue more of one request than there are workers, the bounded queue is shared by all requests
+        this.uploadUrlSigningParallelism = uploadUrlSigningExecutor instanceof ThreadPoolExecutor threadPoolExecutor ? threadPoolExecutor.getMaximumPoolSize() : 1;
+        this.maxFilesPerUploadRequest = maxFilesPerUploadRequest;
+        this.resumableUploadDuration = resumableUploadDuration;
+        this.precheckGlobalScope = "global".equalsIgnoreCase(precheckScope);
+        this.eventHeartbeatInterval = eventHeartbeatInterval;
         this.bucketName = bucketName;
         this.presignedUrlDuration = Duration.ofMinutes(presignedUrlDurationMinutes);
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.listETagMaxAge = listETagMaxAge;
     }
 
     public Mono<List<UploadImageResponse>> createUploadPresignedUrls(UUID userId, List<String> fileNames) {
         if (fileNames == null || fileNames.isEmpty()) {
             return Mono.just(Collections.emptyList());
         }
-        return Flux.fromIterable(fileNames)
-                .map(fileName -> generatePresignedUrl(userId, bucketName, fileName, presignedUrlDuration))
-                .doOnNext(response -> {
-                    UserImageMdl userImageMdl = new UserImageMdl(response.id(), userId, null, response.fileName(), response.createdAt(), null, null, response.expiredAt(), ImageStatus.PENDING);
-                    imageRepository.saveUserImage(userImageMdl);
-                })
-                .collectList();
+        ServiceException rejection = checkUploadRequest(userId, fileNames.size());
+        if (rejection != null) {
+            return Mono.error(rejection);
+        }
+        return issueUploads(userId, fileNames, Collections.nCopies(fileNames.size(), null));
+    }
+
+    // Files whose (md5, size) match an uploaded image are linked to it right away as UPLOADED and get no upload url, which
+    // skips the transfer and the whole event pipeline. Matching only on the hash lets anyone who knows the md5 and size
+    // of a file claim it without having the bytes, so by default only images the user already owns are matched. The
+    // global scope dedups across users and accepts that risk.
+    public Mono<List<UploadImageResponse>> precheckUploads(UUID userId, List<UploadPrecheckRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            return Mono.just(Collections.emptyList());
+        }
+        for (UploadPrecheckRequest request : requests) {
+            if (request == null || request.fileName() == null || request.md5() == null || request.md5().isBlank() || request.size() == null || request.size() <= 0) {
+                return Mono.error(new ServiceException(400, CommonResponseCode.REQUEST_VALIDATION_FAIL, "File name, md5 and size are required"));
+            }
+        }
+        ServiceException rejection = checkUploadRequest(userId, requests.size());
+        if (rejection != null) {
+            return Mono.error(rejection);
+        }
+        Set<String> fileHashes = new HashSet<>();
+        for (UploadPrecheckRequest request : requests) {
+            fileHashes.add(request.md5());
+        }
+        return Mono.fromCallable(() -> imageRepository.findUploadedImagesByHash(fileHashes, precheckGlobalScope ? null : userId))
+                .subscribeOn(blockingScheduler)
+                .flatMap(uploadedImages -> {
+                    Map<String, UploadedImageMdl> uploadedImageMap = new HashMap<>();
+                    for (UploadedImageMdl uploadedImage : uploadedImages) {
+                        uploadedImageMap.put(uploadedImage.getFileHash(), uploadedImage);
+                    }
+                    List<String> fileNames = new ArrayList<>(requests.size());
+                    List<UploadedImageMdl> duplicates = new ArrayList<>(requests.size());
+                    for (UploadPrecheckRequest request : requests) {
+                        UploadedImageMdl uploadedImage = uploadedImageMap.get(request.md5());
+                        boolean duplicate = uploadedImage != null && uploadedImage.getFileSize().longValue() == request.size();
+                        fileNames.add(request.fileName());
+                        duplicates.add(duplicate ? uploadedImage : null);
+                    }
+                    return issueUploads(userId, fileNames, duplicates);
+                });
+    }
+
+    private ServiceException checkUploadRequest(UUID userId, int fileCount) {
+        if (fileCount > maxFilesPerUploadRequest) {
+            return new ServiceException(400, CommonResponseCode.REQUEST_VALIDATION_FAIL, "At most " + maxFilesPerUploadRequest + " files can be uploaded per request");
+        }
+        if (!uploadRateLimiter.tryAcquire(userId, fileCount)) {
+            return new ServiceException(429, CommonResponseCode.TOO_MANY_REQUESTS, "Too many uploads, please try again later.");
+        }
+        return null;
+    }
+
+    // duplicates.get(i) is the uploaded image fileNames.get(i) is linked to, or null when the file has to be uploaded. Urls
+    // are signed in parallel on the bounded signing pool, then all rows are written with a single insert
+    private Mono<List<UploadImageResponse>> issueUploads(UUID userId, List<String> fileNames, List<UploadedImageMdl> duplicates) {
+        return Flux.range(0, fileNames.size())
+                .flatMapSequential(i -> duplicates.get(i) != null
+                        ? Mono.just(new UploadImageResponse(UUID.randomUUID(), fileNames.get(i), Instant.now(), null, null, ImageStatus.UPLOADED))
+                        : Mono.fromCallable(() -> generatePresignedUrl(userId, bucketName, fileNames.get(i), presignedUrlDuration))
+                                .subscribeOn(uploadUrlSigningScheduler), uploadUrlSigningParallelism)
+                .collectList()
+                .onErrorMap(RejectedExecutionException.class, e -> new ServiceException(429, CommonResponseCode.TOO_MANY_REQUESTS, "Too many uploads, please try again later."))
+                .flatMap(responses -> Mono.fromCallable(() -> {
+                    List<UserImageMdl> userImages = new ArrayList<>(responses.size());
+                    for (int i = 0; i < responses.size(); i++) {
+                        UploadImageResponse response = responses.get(i);
+                        UUID uploadedImageId = duplicates.get(i) != null ? duplicates.get(i).getId() : null;
+                        userImages.add(new UserImageMdl(response.id(), userId, uploadedImageId, response.fileName(), response.createdAt(), null, null, response.expiredAt(), response.status()));
+                    }
+                    imageRepository.saveUserImages(userImages);
+                    return responses;
+                }).subscribeOn(blockingScheduler));
     }
 
     private UploadImageResponse generatePresignedUrl(UUID userId, String bucketName, String fileName, Duration presignedUrlDuration) {
@@ -74,12 +206,101 @@ public class ImageService {
 
         Instant now = Instant.now();
         Instant expiredAt = now.plus(presignedUrlDuration);
-        return new UploadImageResponse(fileId, fileName, now, expiredAt, signedUrl.toString());
+        return new UploadImageResponse(fileId, fileName, now, expiredAt, signedUrl.toString(), ImageStatus.PENDING);
+    }
+
+    // The etag only depends on the user's change version, so an unchanged listing is answered without building it. It
+    // also rotates every listETagMaxAge so a client never keeps signed urls past their refresh-ahead window
+    public Mono<String> getUserImageListETag(UUID userId) {
+        return Mono.fromCallable(() -> {
+            Long version = imageRepository.getUserImageVersion(userId);
+            long bucket = Instant.now().toEpochMilli() / listETagMaxAge.toMillis();
+            return "\"" + (version == null ? 0 : version) + "-" + bucket + "\"";
+        }).subscribeOn(blockingScheduler);
+    }
+
+    // Signs a POST that starts a GCS resumable upload session for a pending image, with the same create-only and file name
+    // metadata headers as the single PUT url. The client uploads the chunks to the session uri returned by GCS and can
+    // resume after a failure by asking the session for its committed range. Chunks of one session must be sent in order.
+    // The object, and so the upload event, only appears once the last chunk is committed. The pending image is extended
+    // by resumableUploadDuration so a slow upload is not treated as expired when it finally lands.
+    public Mono<ResumableUploadResponse> createResumableUploadUrl(UUID userId, String imageId) {
+        UUID imageUuid;
+        try {
+            imageUuid = UUID.fromString(imageId);
+        } catch (IllegalArgumentException e) {
+            return Mono.error(new ServiceException(404, CommonResponseCode.NOT_FOUND, "Image not found"));
+        }
+        return Mono.fromCallable(() -> {
+                    Instant now = Instant.now();
+                    return imageRepository.extendPendingUserImage(userId, imageUuid, now.plus(resumableUploadDuration), now);
+                })
+                .subscribeOn(blockingScheduler)
+                .switchIfEmpty(Mono.error(new ServiceException(404, CommonResponseCode.NOT_FOUND, "Image not found or no longer waiting for an upload")))
+                .map(userImage -> {
+                    BlobInfo blobInfo = BlobInfo.newBuilder(bucketName, "uploads/" + userId + "/" + userImage.getId()).build();
+                    URL signedUrl = storage.signUrl(blobInfo, presignedUrlDuration.toMinutes(), TimeUnit.MINUTES,
+                            Storage.SignUrlOption.httpMethod(HttpMethod.POST),
+                            Storage.SignUrlOption.withExtHeaders(Map.of(
+                                    "x-goog-resumable", "start",
+                                    "x-goog-if-generation-match", "0",
+                                    "x-goog-meta-" + CommonConstant.FILE_NAME_METADATA, userImage.getFileName()
+                            )),
+                            Storage.SignUrlOption.withV4Signature());
+                    return new ResumableUploadResponse(userImage.getId(), userImage.getFileName(), userImage.getExpiredAt(), signedUrl.toString());
+                });
     }
 
-    public Mono<List<UserUploadedImageResponse>> listUploadedUserImages(UUID userId) {
-        List<UserUploadedImageMdl> userUploadedImages = imageRepository.getUserUploadedImages(userId);
-        List<UserGeneratedImageMdl> userGeneratedImages = imageRepository.getUserGeneratedImages(userId);
+    public Mono<UserUploadedImagePageResponse> listUploadedUserImages(UUID userId, String cursor, Integer limit, Long since) {
+        return Mono.defer(() -> doListUploadedUserImages(userId, cursor, limit, since)).subscribeOn(blockingScheduler);
+    }
+
+    private Mono<UserUploadedImagePageResponse> doListUploadedUserImages(UUID userId, String cursor, Integer limit, Long since) {
+        UserImageCursor pageCursor;
+        try {
+            pageCursor = cursor == null || cursor.isBlank() ? null : CursorUtil.decode(cursor);
+        } catch (IllegalArgumentException | DateTimeException e) {
+            return Mono.error(new ServiceException(400, CommonResponseCode.REQUEST_VALIDATION_FAIL, "Invalid cursor"));
+        }
+        if (limit != null && limit <= 0) {
+            return Mono.error(new ServiceException(400, CommonResponseCode.REQUEST_VALIDATION_FAIL, "Limit must be positive"));
+        }
+        if (since != null && since < 0) {
+            return Mono.error(new ServiceException(400, CommonResponseCode.REQUEST_VALIDATION_FAIL, "Since must not be negative"));
+        }
+        int pageSize = limit == null ? defaultPageSize : Math.min(limit, maxPageSize);
+
+        // Read before the rows, a write racing with the listing is then returned again by the next delta instead of lost
+        Long currentVersion = imageRepository.getUserImageVersion(userId);
+        long version = currentVersion == null ? 0 : currentVersion;
+        // Fetch one extra row to know whether there is a next page without a separate count query
+        List<UserUploadedImageMdl> userUploadedImages;
+        String nextCursor = null;
+        if (since != null) {
+            // Delta mode, a truncated page reports the version of its last row so the client continues from there
+            userUploadedImages = imageRepository.getUserUploadedImagesChangedSince(userId, since, pageSize + 1);
+            if (userUploadedImages.size() > pageSize) {
+                userUploadedImages = userUploadedImages.subList(0, pageSize);
+                version = userUploadedImages.getLast().getChangeVersion();
+            }
+        } else {
+            userUploadedImages = imageRepository.getUserUploadedImagePage(userId, pageCursor, pageSize + 1);
+            if (userUploadedImages.size() > pageSize) {
+                userUploadedImages = userUploadedImages.subList(0, pageSize);
+                UserUploadedImageMdl lastImage = userUploadedImages.getLast();
+                nextCursor = CursorUtil.encode(new UserImageCursor(lastImage.getCreatedAt(), lastImage.getId()));
+            }
+        }
+
+        Set<UUID> uploadedImageIds = new HashSet<>();
+        for (UserUploadedImageMdl userUploadedImage : userUploadedImages) {
+            if (userUploadedImage.getImageId() != null && userUploadedImage.getDeletedAt() == null) {
+                uploadedImageIds.add(userUploadedImage.getImageId());
+            }
+        }
+        List<UserGeneratedImageMdl> userGeneratedImages = uploadedImageIds.isEmpty()
+                ? Collections.emptyList()
+                : imageRepository.getUserGeneratedImages(userId, uploadedImageIds);
         Map<UUID, List<UserGeneratedImageMdl>> generatedImageMap = new HashMap<>();
         for (UserGeneratedImageMdl userGeneratedImage : userGeneratedImages) {
             generatedImageMap.computeIfAbsent(userGeneratedImage.getImageId(), _k -> new ArrayList<>())
@@ -88,15 +309,8 @@ public class ImageService {
         List<UserUploadedImageResponse> response = new ArrayList<>();
         for (UserUploadedImageMdl userUploadedImage : userUploadedImages) {
             String uploadedImageDownloadUrl;
-            if (userUploadedImage.getStatus() == ImageStatus.UPLOADED) {
-                BlobInfo uploadedImageBlobInfo = BlobInfo.newBuilder(GcsUtil.parseToBlobId(userUploadedImage.getFilePath()))
-                        .setContentType(userUploadedImage.getFileType())
-                        .setCacheControl("public, max-age=86400")
-                        .build();
-                uploadedImageDownloadUrl = storage.signUrl(uploadedImageBlobInfo, 1, TimeUnit.DAYS,
-                                Storage.SignUrlOption.httpMethod(HttpMethod.GET),
-                                Storage.SignUrlOption.withV4Signature())
-                        .toString();
+            if (userUploadedImage.getStatus() == ImageStatus.UPLOADED && userUploadedImage.getDeletedAt() == null) {
+                uploadedImageDownloadUrl = getDownloadUrl(userUploadedImage.getFilePath(), userUploadedImage.getFileType());
             } else {
                 uploadedImageDownloadUrl = null;
             }
@@ -104,14 +318,7 @@ public class ImageService {
             for (UserGeneratedImageMdl userGeneratedImageMdl : generatedImageMap.getOrDefault(userUploadedImage.getImageId(), Collections.emptyList())) {
                 String thumbnailImageDownloadUrl;
                 if (userGeneratedImageMdl.getFilePath() != null) {
-                    BlobInfo thumbnailImageBlobInfo = BlobInfo.newBuilder(GcsUtil.parseToBlobId(userGeneratedImageMdl.getFilePath()))
-                            .setContentType(userGeneratedImageMdl.getFileType())
-                            .setCacheControl("public, max-age=86400")
-                            .build();
-                    thumbnailImageDownloadUrl = storage.signUrl(thumbnailImageBlobInfo, 1, TimeUnit.DAYS,
-                                    Storage.SignUrlOption.httpMethod(HttpMethod.GET),
-                                    Storage.SignUrlOption.withV4Signature())
-                            .toString();
+                    thumbnailImageDownloadUrl = getDownloadUrl(userGeneratedImageMdl.getFilePath(), userGeneratedImageMdl.getFileType());
                 } else {
                     thumbnailImageDownloadUrl = null;
                 }
@@ -144,33 +351,98 @@ public class ImageService {
                     userUploadedImage.getCreatedAt(),
                     userUploadedImage.getUpdatedAt(),
                     userUploadedImage.getExpiredAt(),
+                    userUploadedImage.getDeletedAt(),
                     thumbnails
             ));
         }
-        return Mono.just(response);
+        return Mono.just(new UserUploadedImagePageResponse(response, nextCursor, version));
+    }
+
+    // Status changes of the user's images and thumbnails as server-sent events, plus a periodic comment so proxies keep
+    // the idle connection open
+    public Flux<ServerSentEvent<Object>> streamImageStatusEvents(UUID userId) {
+        Flux<ServerSentEvent<Object>> events = imageStatusListener.notifications()
+                .filter(notification -> userId.equals(notification.userId()))
+                .concatMap(notification -> Mono.fromCallable(() -> toServerSentEvent(notification)).subscribeOn(blockingScheduler));
+        Flux<ServerSentEvent<Object>> heartbeats = Flux.interval(eventHeartbeatInterval)
+                .map(_i -> ServerSentEvent.builder().comment("heartbeat").build());
+        return Flux.merge(events, heartbeats);
+    }
+
+    private ServerSentEvent<Object> toServerSentEvent(ImageStatusNotification notification) {
+        if (ImageStatusNotification.TYPE_THUMBNAIL.equals(notification.type())) {
+            String downloadUrl = notification.filePath() != null ? getDownloadUrl(notification.filePath(), notification.fileType()) : null;
+            Instant createdAt = notification.createdAt() != null ? notification.createdAt().atZone(ZoneId.systemDefault()).toInstant() : null;
+            UserGeneratedImageResponse thumbnail = new UserGeneratedImageResponse(
+                    notification.generatedImageId(),
+                    notification.userId(),
+                    notification.userImageId(),
+                    notification.configurationId(),
+                    notification.width(),
+                    notification.height(),
+                    notification.fileSize(),
+                    downloadUrl,
+                    notification.fileType(),
+                    notification.fileHash(),
+                    createdAt,
+                    notification.jobStatus());
+            return ServerSentEvent.builder((Object) thumbnail).event("thumbnail").build();
+        }
+        String downloadUrl = notification.status() == ImageStatus.UPLOADED && notification.filePath() != null ? getDownloadUrl(notification.filePath(), notification.fileType()) : null;
+        UserImageStatusEvent image = new UserImageStatusEvent(
+                notification.userImageId(),
+                notification.status(),
+                notification.width(),
+                notification.height(),
+                notification.fileSize(),
+                downloadUrl,
+                notification.fileType(),
+                notification.fileHash());
+        return ServerSentEvent.builder((Object) image).event("image").build();
+    }
+
+    private String getDownloadUrl(String filePath, String fileType) {
+        BlobId blobId = GcsUtil.parseToBlobId(filePath);
+        return signedUrlCache.getOrSign(blobId, HttpMethod.GET, fileType, () -> {
+            BlobInfo blobInfo = BlobInfo.newBuilder(blobId)
+                    .setContentType(fileType)
+                    .setCacheControl("public, max-age=86400")
+                    .build();
+            Instant expiresAt = Instant.now().plus(DOWNLOAD_URL_DURATION);
+            URL signedUrl = storage.signUrl(blobInfo, DOWNLOAD_URL_DURATION.toMillis(), TimeUnit.MILLISECONDS,
+                    Storage.SignUrlOption.httpMethod(HttpMethod.GET),
+                    Storage.SignUrlOption.withV4Signature());
+            return new SignedUrl(signedUrl.toString(), expiresAt);
+        });
     }
 
     public String getUploadUrl(UserUploadedImageMdl userUploadedImage, String bucketName, UUID userId, Instant now) {
-        if (userUploadedImage.getStatus() != ImageStatus.PENDING || !Instant.now().isBefore(userUploadedImage.getExpiredAt())) {
+        if (userUploadedImage.getStatus() != ImageStatus.PENDING || userUploadedImage.getDeletedAt() != null || !now.isBefore(userUploadedImage.getExpiredAt())) {
             return null;
         }
-        Duration expiredDuration = Duration.between(now, userUploadedImage.getExpiredAt());
-        return storage.signUrl(BlobInfo.newBuilder(bucketName, "uploads/" + userId + "/" + userUploadedImage.getImageId()).build(), expiredDuration.toMillis(), TimeUnit.MILLISECONDS,
-                Storage.SignUrlOption.httpMethod(HttpMethod.PUT),
-                Storage.SignUrlOption.withExtHeaders(Map.of(
-                        "x-goog-if-generation-match", "0",
-                        "x-goog-meta-" + CommonConstant.FILE_NAME_METADATA, userUploadedImage.getFileName()
-                )),
-                Storage.SignUrlOption.withV4Signature()).toString();
+        BlobId blobId = BlobId.of(bucketName, "uploads/" + userId + "/" + userUploadedImage.getId());
+        // The upload url always expires together with the pending user image, re-signing it would not extend it
+        return signedUrlCache.getOrSign(blobId, HttpMethod.PUT, null, () -> {
+            Duration expiredDuration = Duration.between(Instant.now(), userUploadedImage.getExpiredAt());
+            URL signedUrl = storage.signUrl(BlobInfo.newBuilder(blobId).build(), expiredDuration.toMillis(), TimeUnit.MILLISECONDS,
+                    Storage.SignUrlOption.httpMethod(HttpMethod.PUT),
+                    Storage.SignUrlOption.withExtHeaders(Map.of(
+                            "x-goog-if-generation-match", "0",
+                            "x-goog-meta-" + CommonConstant.FILE_NAME_METADATA, userUploadedImage.getFileName()
+                    )),
+                    Storage.SignUrlOption.withV4Signature());
+            return new SignedUrl(signedUrl.toString(), userUploadedImage.getExpiredAt());
+        });
     }
 
     public Mono<Boolean> deleteUserImage(UUID userId, String imageId) {
+        UUID imageUuid;
         try {
-            UUID imageUuid = UUID.fromString(imageId);
-            boolean deleted = imageRepository.deleteUserImage(userId, imageUuid);
-            return Mono.just(deleted);
+            imageUuid = UUID.fromString(imageId);
         } catch (IllegalArgumentException e) {
             return Mono.just(false);
         }
+        return Mono.fromCallable(() -> imageRepository.deleteUserImage(userId, imageUuid, Instant.now()))
+                .subscribeOn(blockingScheduler);
     }
 }
@@ -0,0 +1,48 @@
+package com.hoquangnam45.cdc.image.app.image.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.HttpMethod;
+import com.hoquangnam45.cdc.image.app.image.model.SignedUrl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Supplier;
+
+// (blobId, method, contentType) -> signed url. An entry is dropped refresh-ahead before its url expires (or halfway
+// through its lifetime for short lived urls), so a cached url always has enough validity left for the client to use it.
+@Component
+public class SignedUrlCache {
+    private static final String CACHE_NAME = "signedUrl";
+
+    private final Cache<Key, SignedUrl> cache;
+
+    public SignedUrlCache(MeterRegistry meterRegistry, @Value("${app.cache.signed-url.maximum-size}") long maximumSize, @Value("${app.cache.signed-url.refresh-ahead}") Duration refreshAhead) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(Expiry.creating((Key key, SignedUrl signedUrl) -> {
+                    Duration lifetime = Duration.between(Instant.now(), signedUrl.expiresAt());
+                    if (lifetime.isNegative()) {
+                        return Duration.ZERO;
+                    }
+                    Duration margin = refreshAhead.compareTo(lifetime.dividedBy(2)) < 0 ? refreshAhead : lifetime.dividedBy(2);
+                    return lifetime.minus(margin);
+                }))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    public String getOrSign(BlobId blobId, HttpMethod method, String contentType, Supplier<SignedUrl> signer) {
+        return cache.get(new Key(blobId, method, contentType), _k -> signer.get()).url();
+    }
+
+    private record Key(BlobId blobId, HttpMethod method, String contentType) {
+    }
+}
@@ -0,0 +1,65 @@
+package com.hoquangnam45.cdc.image.app.image.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.UUID;
+
+// Per user token bucket counted in files: capacity files at once, refilled evenly over refill-period. The buckets live
+// in this instance only, so behind N replicas a user gets up to N times the limit.
+@Component
+public class UploadRateLimiter {
+    private final Cache<UUID, TokenBucket> buckets;
+    private final long capacity;
+    private final double refillPerNano;
+    private final Counter rejectedCounter;
+
+    public UploadRateLimiter(
+            MeterRegistry meterRegistry,
+            @Value("${app.image.upload.rate-limit.capacity}") long capacity,
+            @Value("${app.image.upload.rate-limit.refill-period}") Duration refillPeriod,
+            @Value("${app.image.upload.rate-limit.maximum-users}") long maximumUsers) {
+        this.capacity = capacity;
+        this.refillPerNano = (double) capacity / refillPeriod.toNanos();
+        // An idle bucket is full again after refillPeriod, dropping it then is the same as keeping it
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maximumUsers)
+                .expireAfterAccess(refillPeriod)
+                .build();
+        this.rejectedCounter = meterRegistry.counter("image.upload.rate_limit.rejected");
+    }
+
+    public boolean tryAcquire(UUID userId, int files) {
+        boolean acquired = buckets.get(userId, _k -> new TokenBucket(capacity, System.nanoTime())).tryAcquire(files, capacity, refillPerNano);
+        if (!acquired) {
+            rejectedCounter.increment();
+        }
+        return acquired;
+    }
+
+    private static final class TokenBucket {
+        private double tokens;
+        private long refilledAt;
+
+        private TokenBucket(double tokens, long refilledAt) {
+            this.tokens = tokens;
+            this.refilledAt = refilledAt;
+        }
+
+        private synchronized boolean tryAcquire(int permits, long capacity, double refillPerNano) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * refillPerNano);
+            refilledAt = now;
+            if (tokens < permits) {
+                return false;
+            }
+            tokens -= permits;
+            return true;
+        }
+    }
+}
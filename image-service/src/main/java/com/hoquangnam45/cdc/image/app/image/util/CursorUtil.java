@@ -0,0 +1,27 @@
+package com.hoquangnam45.cdc.image.app.image.util;
+
+import com.hoquangnam45.cdc.image.app.image.model.UserImageCursor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+// The cursor is opaque to clients, it only carries the sort key (created_at, id) of the last row of the previous page
+public class CursorUtil {
+    private static final String SEPARATOR = "|";
+
+    public static String encode(UserImageCursor cursor) {
+        String raw = cursor.createdAt().toString() + SEPARATOR + cursor.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static UserImageCursor decode(String cursor) {
+        String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        int separatorIndex = raw.indexOf(SEPARATOR);
+        if (separatorIndex < 0) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        return new UserImageCursor(Instant.parse(raw.substring(0, separatorIndex)), UUID.fromString(raw.substring(separatorIndex + 1)));
+    }
+}